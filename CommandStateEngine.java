@@ -0,0 +1,160 @@
+import MessagePackage.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Description:
+ * This class keeps the desired state of every actuator (heater, chiller, humidifier, dehumidifier) and sends a
+ * command only when that state changes, instead of repeating all commands on every cycle:
+ * 1. Actuator.set() sends the command of a new state and marks it unconfirmed
+ * 2. confirm() marks it confirmed when the controller's confirmation of that state arrives
+ * 3. retransmit() sends the command again if no confirmation arrived within the timeout
+ * 4. resync() sends every command again, e.g. when a controller or sensor joins or a backup takes over
+ * In the steady state no command and no confirmation is sent at all.
+ * A confirmation has the negated message ID of its command and the same text (e.g. command 5 "H1",
+ * confirmation -5 "H1").
+ */
+public class CommandStateEngine {
+    private long retransmitTimeout;
+    private List<Actuator> actuators;
+
+    public CommandStateEngine(long retransmitTimeout) {
+        this.retransmitTimeout = retransmitTimeout;
+        actuators = new ArrayList<>();
+    }
+
+    /***************************************************************************
+     * Purpose: Add an actuator
+     *
+     * Arguments:
+     * int - message ID of its commands, e.g. MessageType.TEMPERATURE_COMMAND
+     * char - letter of its command codes, e.g. 'H' for "H1" and "H0"
+     * Consumer<Boolean> - sends the command for the given state (true = on)
+     *
+     * Returns: Actuator.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized Actuator actuator(int commandId, char code, Consumer<Boolean> sender) {
+        Actuator a = new Actuator(commandId, Character.toUpperCase(code), sender);
+        actuators.add(a);
+        return a;
+    }
+
+    /***************************************************************************
+     * Purpose: Process a message that may be a confirmation of a command
+     *
+     * Arguments: Message - incoming message
+     *
+     * Returns: boolean - true if the message is a confirmation of one of the actuators.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized boolean confirm(Message m) {
+        String text = m.GetMessage();
+        if (text == null || text.length() != 2) return false;
+
+        char code = Character.toUpperCase(text.charAt(0));
+        for (Actuator a : actuators) {
+            if (a.commandId == -m.GetMessageId() && a.code == code) {
+                boolean on = text.charAt(1) == '1';
+                // a late confirmation of a previous state does not confirm the current one
+                if (a.desired != null && a.desired == on) a.confirmed = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /***************************************************************************
+     * Purpose: Send again every command that was not confirmed within the timeout
+     *
+     * Arguments: long - current time in milliseconds
+     *
+     * Returns: int - number of commands sent again.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized int retransmit(long currentTime) {
+        int count = 0;
+        for (Actuator a : actuators) {
+            if (a.desired != null && !a.confirmed && currentTime - a.sentTime >= retransmitTimeout) {
+                a.send(currentTime);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /***************************************************************************
+     * Purpose: Mark every command unconfirmed so that the next call to
+     * retransmit() sends it again
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized void resync() {
+        for (Actuator a : actuators) {
+            a.confirmed = false;
+            a.sentTime = Long.MIN_VALUE / 2;
+        }
+    }
+
+    /**
+     * Desired state of one actuator
+     */
+    public class Actuator {
+        private final int commandId;
+        private final char code;
+        private final Consumer<Boolean> sender;
+        private Boolean desired = null;     // null until the first set()
+        private boolean confirmed = false;
+        private long sentTime;
+
+        private Actuator(int commandId, char code, Consumer<Boolean> sender) {
+            this.commandId = commandId;
+            this.code = code;
+            this.sender = sender;
+        }
+
+        /***************************************************************************
+         * Purpose: Set the desired state, sending the command only if it changed
+         *
+         * Arguments: boolean - true to turn the actuator on
+         *
+         * Returns: None.
+         *
+         * Exceptions: None.
+         *
+         ****************************************************************************/
+        public void set(boolean on) {
+            synchronized (CommandStateEngine.this) {
+                if (desired != null && desired == on) return;
+
+                desired = on;
+                confirmed = false;
+                send(System.currentTimeMillis());
+            }
+        }
+
+        public boolean isConfirmed() {
+            synchronized (CommandStateEngine.this) {
+                return confirmed;
+            }
+        }
+
+        private void send(long currentTime) {
+            sentTime = currentTime;
+            sender.accept(desired);
+        }
+    }
+}
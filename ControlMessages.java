@@ -0,0 +1,45 @@
+import MessagePackage.Message;
+
+/**
+ * Description:
+ * This class holds pre-built, frozen messages for the fixed command vocabulary of the system:
+ * actuator commands, their confirmations and the halt signal.
+ * These instances are shared by every participant in the process; the sender ID is stamped by the
+ * message manager on its own copy, so none of them is ever modified.
+ */
+public final class ControlMessages {
+
+    // temperature controller commands
+    public static final Message HEATER_ON = constant(MessageType.TEMPERATURE_COMMAND, "H1");
+    public static final Message HEATER_OFF = constant(MessageType.TEMPERATURE_COMMAND, "H0");
+    public static final Message CHILLER_ON = constant(MessageType.TEMPERATURE_COMMAND, "C1");
+    public static final Message CHILLER_OFF = constant(MessageType.TEMPERATURE_COMMAND, "C0");
+
+    // humidity controller commands
+    public static final Message HUMIDIFIER_ON = constant(MessageType.HUMIDITY_COMMAND, "H1");
+    public static final Message HUMIDIFIER_OFF = constant(MessageType.HUMIDITY_COMMAND, "H0");
+    public static final Message DEHUMIDIFIER_ON = constant(MessageType.HUMIDITY_COMMAND, "D1");
+    public static final Message DEHUMIDIFIER_OFF = constant(MessageType.HUMIDITY_COMMAND, "D0");
+
+    // temperature controller confirmations
+    public static final Message HEATER_ON_CONFIRMED = constant(MessageType.TEMPERATURE_CONFIRMATION, "H1");
+    public static final Message HEATER_OFF_CONFIRMED = constant(MessageType.TEMPERATURE_CONFIRMATION, "H0");
+    public static final Message CHILLER_ON_CONFIRMED = constant(MessageType.TEMPERATURE_CONFIRMATION, "C1");
+    public static final Message CHILLER_OFF_CONFIRMED = constant(MessageType.TEMPERATURE_CONFIRMATION, "C0");
+
+    // humidity controller confirmations
+    public static final Message HUMIDIFIER_ON_CONFIRMED = constant(MessageType.HUMIDITY_CONFIRMATION, "H1");
+    public static final Message HUMIDIFIER_OFF_CONFIRMED = constant(MessageType.HUMIDITY_CONFIRMATION, "H0");
+    public static final Message DEHUMIDIFIER_ON_CONFIRMED = constant(MessageType.HUMIDITY_CONFIRMATION, "D1");
+    public static final Message DEHUMIDIFIER_OFF_CONFIRMED = constant(MessageType.HUMIDITY_CONFIRMATION, "D0");
+
+    // stops the whole system
+    public static final Message HALT = constant(MessageType.HALT, "XXX");
+
+    private ControlMessages() {
+    }
+
+    private static Message constant(int messageId, String text) {
+        return new Message(messageId, text).Freeze();
+    }
+}
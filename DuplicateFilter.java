@@ -0,0 +1,155 @@
+import MessagePackage.Message;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Description:
+ * This class drops the copies of a message that a participant reads from more than one message manager, e.g. when
+ * a poll is hedged to a standby or a standby takes over and replays its queue. Every send of a MessageBus carries
+ * its identity (see the class: Message.java): a random id of the bus and an increasing send number. For each
+ * sending bus the filter keeps a bitmap of the send numbers it has read, so a copy is recognised even when the sends
+ * of a bus were reordered by its threads. Messages without an identity are always accepted.
+ * The copies of a send are read at most the replay span of the reading bus apart, so what the filter remembers is
+ * bounded by time rather than by count: a block of 64 send numbers is forgotten once its newest number was first
+ * read more than the retention ago, and a bus that was not heard from for that long is forgotten altogether. The
+ * bitmap thus spans whatever a bus sent during the retention, however fast it sends, and any number of buses can
+ * be told apart. A number of a block that was forgotten is accepted: it cannot be a copy, as its first copy would
+ * have been read more than the retention ago. Only a bus sending over MAX_BLOCKS blocks within the retention has
+ * its oldest blocks forgotten early.
+ * This class is not thread safe.
+ */
+public class DuplicateFilter {
+    private static final int MAX_BLOCKS = 1 << 16;      // 4M send numbers, 512 KB per bus
+
+    private final long retention;
+    private Map<Long, Window> windows;   // least recently heard bus first
+
+    /***************************************************************************
+     * Purpose: Create a filter
+     *
+     * Arguments: long - retention in milliseconds, at least the longest time
+     * between two copies of a send being read
+     *
+     ****************************************************************************/
+    public DuplicateFilter(long retention) {
+        this.retention = retention;
+        windows = new LinkedHashMap<Long, Window>(16, 0.75f, true);
+    }
+
+    /***************************************************************************
+     * Purpose: Tell whether a message is the first copy of its send to be
+     * read, and remember it
+     *
+     * Arguments: Message - message read from a message manager
+     *
+     * Returns: boolean - false if a copy of the send was accepted before.
+     *
+     ****************************************************************************/
+    public boolean accept(Message m) {
+        long origin = m.GetOrigin();
+        if (origin == 0) return true;
+
+        long now = System.currentTimeMillis();
+        forget(now - retention);
+        return windows.computeIfAbsent(origin, o -> new Window()).accept(m.GetSendSequence(), now);
+    }
+
+    /**
+     * Forget the buses last heard from before the given time
+     */
+    private void forget(long oldest) {
+        for (Iterator<Window> it = windows.values().iterator(); it.hasNext(); ) {
+            if (it.next().lastHeard >= oldest) return;
+            it.remove();
+        }
+    }
+
+    /**
+     * Send numbers of one bus read within the retention: a ring of 64 bit blocks, from the oldest block kept to
+     * the one of the highest number read, with the time each block last took a new highest number. The ring
+     * grows down as well, for the numbers read after a higher one, until its oldest block is forgotten.
+     */
+    private class Window {
+        private long floor = 0;         // block number below which the blocks were forgotten
+        private long first;             // block number of the oldest block kept
+        private long last = -1;         // block number of the block of the highest number read, -1 before the first
+        private long[] seen = new long[1];
+        private long[] times = new long[1];
+        private long lastHeard;
+
+        boolean accept(long sequence, long now) {
+            lastHeard = now;
+            long block = sequence >>> 6;
+            if (last < 0) {
+                first = block;
+                last = block;
+            }
+
+            while (first < last && times[index(first)] < now - retention) floor = ++first;
+
+            if (block > last) {
+                open(block, now);
+            } else if (block < floor || last - block >= MAX_BLOCKS) {
+                return true;    // its block was forgotten, so it is not a copy
+            } else if (block < first) {
+                extend(block);
+            } else if (block == last) {
+                times[index(block)] = now;
+            }
+
+            int i = index(block);
+            long bit = 1L << sequence;
+            if ((seen[i] & bit) != 0) return false;
+            seen[i] |= bit;
+            return true;
+        }
+
+        /**
+         * Add the blocks up to the given one, growing the ring if they do not fit
+         */
+        private void open(long block, long now) {
+            if (block - first >= MAX_BLOCKS) floor = first = block - MAX_BLOCKS + 1;
+            if (block - first >= seen.length) grow(block - first + 1);
+
+            for (long b = Math.max(last + 1, first); b <= block; b++) {
+                seen[index(b)] = 0;
+                times[index(b)] = now;
+            }
+            last = block;
+        }
+
+        /**
+         * Add the blocks down to the given one, as old as the oldest block kept
+         */
+        private void extend(long block) {
+            if (last - block >= seen.length) grow(last - block + 1);
+
+            long time = times[index(first)];
+            for (long b = first - 1; b >= block; b--) {
+                seen[index(b)] = 0;
+                times[index(b)] = time;
+            }
+            first = block;
+        }
+
+        private void grow(long blocks) {
+            int length = seen.length;
+            while (length < blocks) length *= 2;
+
+            long[] grownSeen = new long[length];
+            long[] grownTimes = new long[length];
+            for (long b = first; b <= last; b++) {
+                grownSeen[(int) (b & (length - 1))] = seen[index(b)];
+                grownTimes[(int) (b & (length - 1))] = times[index(b)];
+            }
+            seen = grownSeen;
+            times = grownTimes;
+        }
+
+        private int index(long block) {
+            return (int) (block & (seen.length - 1));
+        }
+    }
+}
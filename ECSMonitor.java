@@ -30,6 +30,7 @@ import java.util.*;
 import java.util.function.BiConsumer;
 
 class ECSMonitor extends Thread {
+    private static final long COMMAND_RETRANSMIT_TIMEOUT = 5000;    // Time to wait for a confirmation before sending a command again
     private MonitorManager mm;    // Monitor Manager
     private String[] MsgIpAddresses;              // Message manager IP addresses
     private float TempRangeHigh = 100;            // These parameters signify the temperature and humidity ranges in terms
@@ -37,12 +38,20 @@ class ECSMonitor extends Thread {
     private float HumiRangeHigh = 100;            // this temperature and humidity. Temperatures are in degrees Fahrenheit
     private float HumiRangeLow = 0;                // and humidity is in relative humidity percentage.
     boolean Registered = true;                    // Signifies that this class is registered with an message manager.
-    MessageWindow mw = null;                    // This is the message window
-    Indicator ti;                                // Temperature indicator
-    Indicator hi;                                // Humidity indicator
+    MessageDisplay mw = null;                    // This is the message window
+    IndicatorDisplay ti;                        // Temperature indicator
+    IndicatorDisplay hi;                        // Humidity indicator
 
     private float CurrentTemperature = 0;    // Current temperature as reported by the temperature sensor
     private float CurrentHumidity = 0;        // Current relative humidity as reported by the humidity sensor
+    private MessageTracer tracer = MessageTracer.getInstance();
+    private Message TemperatureCause = null;    // Latest temperature reading; commands join its latency trace
+    private Message HumidityCause = null;        // Latest humidity reading; commands join its latency trace
+    private CommandStateEngine commands;        // Sends actuator commands on state changes only
+    private CommandStateEngine.Actuator heater;
+    private CommandStateEngine.Actuator chiller;
+    private CommandStateEngine.Actuator humidifier;
+    private CommandStateEngine.Actuator dehumidifier;
 
 
     public ECSMonitor(String[] MsgIpAddresses) {
@@ -50,13 +59,20 @@ class ECSMonitor extends Thread {
         mm = new MonitorManager();
         this.MsgIpAddresses = MsgIpAddresses;
 
+        commands = new CommandStateEngine(COMMAND_RETRANSMIT_TIMEOUT);
+        heater = commands.actuator(MessageType.TEMPERATURE_COMMAND, 'H', this::Heater);
+        chiller = commands.actuator(MessageType.TEMPERATURE_COMMAND, 'C', this::Chiller);
+        humidifier = commands.actuator(MessageType.HUMIDITY_COMMAND, 'H', this::Humidifier);
+        dehumidifier = commands.actuator(MessageType.HUMIDITY_COMMAND, 'D', this::Dehumidifier);
+
     } // Constructor
 
     public void run() {
-        mw = new MessageWindow("ECS Monitoring Console", 0, 0);
+        Instrumentation ui = Instrumentation.getInstance();    // Swing, console or no displays (-Dinstrumentation)
+        mw = ui.CreateMessageWindow("ECS Monitoring Console", 0, 0);
 
-        ti = new Indicator("TEMP UNK", mw.GetX() + mw.Width(), 0);
-        hi = new Indicator("HUMI UNK", mw.GetX() + mw.Width(), (int) (mw.Height() / 2), 2);
+        ti = ui.CreateIndicator("TEMP UNK", mw.GetX() + mw.Width(), 0);
+        hi = ui.CreateIndicator("HUMI UNK", mw.GetX() + mw.Width(), (int) (mw.Height() / 2), 2);
 
         mm.registerForIncomingMessage(this::handleIncomingMessages);
         mm.registerForParticipantReadyEvent(ParticipantType.HUMIDITY_CONTROLLER, this.handleParticipantReadyCreator(ParticipantType.HUMIDITY_CONTROLLER));
@@ -69,6 +85,7 @@ class ECSMonitor extends Thread {
         mm.registerForParticipantFailureEvent(ParticipantType.TEMPERATURE_SENSOR, this.handleParticipantFailureCreator(ParticipantType.TEMPERATURE_SENSOR));
         mm.registerForMessageManagerReadyEvent(() -> mw.WriteMessage("Message bus service is ready"));
         mm.registerForMessageManagerFailureEvent(this.handleMessageManagerFailureCreator());
+        mm.registerForMessageManagerRecoveryEvent(this.handleMessageManagerRecoveryCreator());
 
         try {
             mm.start(MsgIpAddresses);
@@ -99,12 +116,20 @@ class ECSMonitor extends Thread {
 
 
     private Runnable handleParticipantReadyCreator(ParticipantType type) {
-        return () -> mw.WriteMessage("Participant [" + type.toString() + "] is ready!");
+        return () -> {
+            mw.WriteMessage("Participant [" + type.toString() + "] is ready!");
+
+            // Commands are only sent on changes, so a newcomer learns the current state by a resend
+            commands.resync();
+        };
     }
 
     private BiConsumer<Long, Boolean> handleParticipantFailureCreator(ParticipantType type) {
         return (id, allFailed) -> {
             mw.WriteMessage("Participant [" + type.toString() + "] " + id + " failed!");
+
+            // A backup takes over; make sure it confirms the current state
+            commands.resync();
             if (allFailed) {
                 mw.WriteMessage("ALL [" + type.toString().toUpperCase() + "] FAILED!!!!");
             }
@@ -120,6 +145,16 @@ class ECSMonitor extends Thread {
         };
     }
 
+    private BiConsumer<String, Boolean> handleMessageManagerRecoveryCreator() {
+        return (IP, mainChannel) -> {
+            if (mainChannel) {
+                mw.WriteMessage("Message manager on IP [" + IP + "] is the main channel again.");
+            } else {
+                mw.WriteMessage("Message manager on IP [" + IP + "] recovered.");
+            }
+        };
+    }
+
     private void handleIncomingMessages(List<Message> messageList) {
         int qlen = messageList.size();
 
@@ -129,7 +164,9 @@ class ECSMonitor extends Thread {
             if (Msg.GetMessageId() == 1) // Temperature reading
             {
                 try {
-                    CurrentTemperature = Float.valueOf(Msg.GetMessage()).floatValue();
+                    CurrentTemperature = Msg.GetFloatValue();
+                    TemperatureCause = Msg;
+                    tracer.handled(Msg);
 
                 } // try
 
@@ -144,7 +181,9 @@ class ECSMonitor extends Thread {
             {
                 try {
 
-                    CurrentHumidity = Float.valueOf(Msg.GetMessage()).floatValue();
+                    CurrentHumidity = Msg.GetFloatValue();
+                    HumidityCause = Msg;
+                    tracer.handled(Msg);
 
                 } // try
 
@@ -155,6 +194,13 @@ class ECSMonitor extends Thread {
 
             } // if
 
+            // Confirmations of actuator commands (-5 and -4)
+
+            if (Msg.GetMessageId() == MessageType.TEMPERATURE_CONFIRMATION || Msg.GetMessageId() == MessageType.HUMIDITY_CONFIRMATION) {
+                commands.confirm(Msg);
+
+            } // if
+
             // If the message ID == 99 then this is a signal that the simulation
             // is to end. At this point, the loop termination flag is set to
             // true and this process unregisters from the message manager.
@@ -179,11 +225,20 @@ class ECSMonitor extends Thread {
                 hi.dispose();
                 ti.dispose();
 
+                // Stop pulling messages; nothing is left to monitor.
+
+                mm.stop();
+
             } // if
 
         } // for
 
         handleMetricsChange();
+
+        // Only commands sent in reaction to this batch belong to its readings' traces.
+
+        TemperatureCause = null;
+        HumidityCause = null;
     }
 
     private void handleMetricsChange() {
@@ -197,22 +252,22 @@ class ECSMonitor extends Thread {
         if (CurrentTemperature < TempRangeLow) // temperature is below threshhold
         {
             ti.SetLampColorAndMessage("TEMP LOW", 3);
-            Heater(ON);
-            Chiller(OFF);
+            heater.set(ON);
+            chiller.set(OFF);
 
         } else {
 
             if (CurrentTemperature > TempRangeHigh) // temperature is above threshhold
             {
                 ti.SetLampColorAndMessage("TEMP HIGH", 3);
-                Heater(OFF);
-                Chiller(ON);
+                heater.set(OFF);
+                chiller.set(ON);
 
             } else {
 
                 ti.SetLampColorAndMessage("TEMP OK", 1); // temperature is within threshhold
-                Heater(OFF);
-                Chiller(OFF);
+                heater.set(OFF);
+                chiller.set(OFF);
 
             } // if
         } // if
@@ -221,26 +276,33 @@ class ECSMonitor extends Thread {
 
         if (CurrentHumidity < HumiRangeLow) {
             hi.SetLampColorAndMessage("HUMI LOW", 3); // humidity is below threshhold
-            Humidifier(ON);
-            Dehumidifier(OFF);
+            humidifier.set(ON);
+            dehumidifier.set(OFF);
 
         } else {
 
             if (CurrentHumidity > HumiRangeHigh) // humidity is above threshhold
             {
                 hi.SetLampColorAndMessage("HUMI HIGH", 3);
-                Humidifier(OFF);
-                Dehumidifier(ON);
+                humidifier.set(OFF);
+                dehumidifier.set(ON);
 
             } else {
 
                 hi.SetLampColorAndMessage("HUMI OK", 1); // humidity is within threshhold
-                Humidifier(OFF);
-                Dehumidifier(OFF);
+                humidifier.set(OFF);
+                dehumidifier.set(OFF);
 
             } // if
 
         } // if
+
+        // Send again the commands whose confirmation did not arrive in time
+
+        int Retransmitted = commands.retransmit(System.currentTimeMillis());
+        if (Retransmitted > 0) {
+            mw.WriteMessage("No confirmation received, " + Retransmitted + " command(s) sent again");
+        }
     }
 
     /***************************************************************************
@@ -316,16 +378,10 @@ class ECSMonitor extends Thread {
     public void Halt() {
         mw.WriteMessage("***HALT MESSAGE RECEIVED - SHUTTING DOWN SYSTEM***");
 
-        // Here we create the stop message.
-
-        Message msg;
-
-        msg = new Message((int) 99, "XXX");
-
-        // Here we send the message to the message manager.
+        // Here we send the shared stop message to the message manager.
 
         try {
-            mm.SendMessage(msg);
+            mm.SendMessage(ControlMessages.HALT);
 
         } // try
 
@@ -351,18 +407,13 @@ class ECSMonitor extends Thread {
      ***************************************************************************/
 
     private void Heater(boolean ON) {
-        // Here we create the message.
-
-        Message msg;
+        // Here we pick the shared, pre-built command message.
 
-        if (ON) {
-            msg = new Message((int) 5, "H1");
+        Message msg = ON ? ControlMessages.HEATER_ON : ControlMessages.HEATER_OFF;
 
-        } else {
-
-            msg = new Message((int) 5, "H0");
+        // The command joins the latency trace of the reading that caused it.
 
-        } // if
+        msg = tracer.follow(TemperatureCause, msg);
 
         // Here we send the message to the message manager.
 
@@ -393,18 +444,13 @@ class ECSMonitor extends Thread {
      ***************************************************************************/
 
     private void Chiller(boolean ON) {
-        // Here we create the message.
-
-        Message msg;
-
-        if (ON) {
-            msg = new Message((int) 5, "C1");
+        // Here we pick the shared, pre-built command message.
 
-        } else {
+        Message msg = ON ? ControlMessages.CHILLER_ON : ControlMessages.CHILLER_OFF;
 
-            msg = new Message((int) 5, "C0");
+        // The command joins the latency trace of the reading that caused it.
 
-        } // if
+        msg = tracer.follow(TemperatureCause, msg);
 
         // Here we send the message to the message manager.
 
@@ -435,18 +481,13 @@ class ECSMonitor extends Thread {
      ***************************************************************************/
 
     private void Humidifier(boolean ON) {
-        // Here we create the message.
-
-        Message msg;
+        // Here we pick the shared, pre-built command message.
 
-        if (ON) {
-            msg = new Message((int) 4, "H1");
-
-        } else {
+        Message msg = ON ? ControlMessages.HUMIDIFIER_ON : ControlMessages.HUMIDIFIER_OFF;
 
-            msg = new Message((int) 4, "H0");
+        // The command joins the latency trace of the reading that caused it.
 
-        } // if
+        msg = tracer.follow(HumidityCause, msg);
 
         // Here we send the message to the message manager.
 
@@ -477,18 +518,13 @@ class ECSMonitor extends Thread {
      ***************************************************************************/
 
     private void Dehumidifier(boolean ON) {
-        // Here we create the message.
-
-        Message msg;
+        // Here we pick the shared, pre-built command message.
 
-        if (ON) {
-            msg = new Message((int) 4, "D1");
+        Message msg = ON ? ControlMessages.DEHUMIDIFIER_ON : ControlMessages.DEHUMIDIFIER_OFF;
 
-        } else {
+        // The command joins the latency trace of the reading that caused it.
 
-            msg = new Message((int) 4, "D0");
-
-        } // if
+        msg = tracer.follow(HumidityCause, msg);
 
         // Here we send the message to the message manager.
 
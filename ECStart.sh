@@ -1,19 +1,22 @@
 #!/bin/bash
 # Environmental Control System start-up script
+# Participant displays: INSTRUMENTATION=swing (default), console or none, e.g.
+#   INSTRUMENTATION=console ./ECStart.sh 10.0.0.1
 javac *.java
+UI="-Dinstrumentation=${INSTRUMENTATION:-swing}"
 
 echo -n -e "\033]0;ECS CONSOLE\007"
 echo "Starting TemperatureController"
-java TemperatureController $1 $2&
-java TemperatureController $1 $2&
+java $UI TemperatureController $1 $2&
+java $UI TemperatureController $1 $2&
 echo "Starting HumidityController"
-java HumidityController $1 $2&
-java HumidityController $1 $2&
+java $UI HumidityController $1 $2&
+java $UI HumidityController $1 $2&
 echo "Starting TemperatureSensor"
-java TemperatureSensor $1 $2&
-java TemperatureSensor $1 $2&
+java $UI TemperatureSensor $1 $2&
+java $UI TemperatureSensor $1 $2&
 echo "Starting HumiditySensor"
-java HumiditySensor $1 $2&
-java HumiditySensor $1 $2&
+java $UI HumiditySensor $1 $2&
+java $UI HumiditySensor $1 $2&
 echo "Starting ECSConsole"
-java ECSConsole $1 $2
\ No newline at end of file
+java $UI ECSConsole $1 $2
\ No newline at end of file
@@ -0,0 +1,169 @@
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Description:
+ * This class runs event callbacks on a small, fixed pool of daemon threads instead of the thread that
+ * detected the event or one new thread per callback. Callbacks are submitted to a lane named by an event
+ * key; the callbacks of one lane run one at a time in submission order, while different lanes run in
+ * parallel. A lane is queued on the pool at most once, so the pool queue never holds more entries than
+ * there are lanes, and a lane gives its thread back after a batch of callbacks so a busy lane cannot
+ * starve the others.
+ * A lane holds at most -Deventdispatcher.lane.capacity callbacks (default 1024): beyond that the caller waits
+ * until the lane has room, unless it is a thread of the pool, which may be the one the lane waits for. A lane
+ * that ran empty is removed, so keys used once (e.g. of a bus that is gone) do not stay in memory.
+ * The pool threads stop when idle, so a dispatcher that is no longer used needs no shutdown.
+ */
+public class EventDispatcher {
+    private static final int LANE_BATCH_SIZE = 32;
+    private static final long IDLE_TIMEOUT = 10000;
+    private static final int LANE_CAPACITY = Integer.getInteger("eventdispatcher.lane.capacity", 1024);
+
+    private ThreadPoolExecutor executor;
+    private Map<Object, Lane> lanes;
+    private Set<Thread> poolThreads;     // never made to wait for room in a lane
+
+    /***************************************************************************
+     * Purpose: Create a dispatcher
+     *
+     * Arguments:
+     * String - name prefix of the pool threads
+     * int - maximum number of callbacks running at the same time
+     *
+     ****************************************************************************/
+    public EventDispatcher(String name, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        poolThreads = ConcurrentHashMap.newKeySet();
+        executor = new ThreadPoolExecutor(threads, threads, IDLE_TIMEOUT, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(() -> {
+                poolThreads.add(Thread.currentThread());
+                try {
+                    r.run();
+                } finally {
+                    poolThreads.remove(Thread.currentThread());
+                }
+            }, name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        lanes = new ConcurrentHashMap<>();
+    }
+
+    /***************************************************************************
+     * Purpose: Run a callback after every callback previously submitted with the
+     * same key. The caller never waits for the callback, only for room in a full
+     * lane.
+     *
+     * Arguments:
+     * Object - event key naming the lane, e.g. a participant type
+     * Runnable - callback
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void submit(Object key, Runnable callback) {
+        while (!lanes.computeIfAbsent(key, Lane::new).offer(callback)) {
+            // the lane ran empty and was removed in the meantime: the next one starts in order
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: Get the number of callbacks waiting to run, over all lanes
+     *
+     * Arguments: None.
+     *
+     * Returns: int - backlog.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public int backlog() {
+        int backlog = 0;
+        for (Lane lane : lanes.values()) {
+            backlog += lane.size();
+        }
+        return backlog;
+    }
+
+    /**
+     * Callbacks of one event key, drained by at most one pool thread at a time
+     */
+    private class Lane implements Runnable {
+        private final Object key;
+        private ArrayDeque<Runnable> callbacks = new ArrayDeque<>();
+        private boolean queued = false;
+        private boolean removed = false;
+        private int waiting = 0;        // callers waiting for room
+
+        Lane(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Queue a callback, waiting for room if the lane is full; false if the lane was removed
+         */
+        boolean offer(Runnable callback) {
+            synchronized (this) {
+                boolean mayWait = !poolThreads.contains(Thread.currentThread());
+                while (!removed && mayWait && callbacks.size() >= LANE_CAPACITY) {
+                    waiting++;
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        mayWait = false;
+                    } finally {
+                        waiting--;
+                    }
+                }
+                if (removed) return false;
+
+                callbacks.add(callback);
+                if (queued) return true;
+                queued = true;
+            }
+            executor.execute(this);
+            return true;
+        }
+
+        synchronized int size() {
+            return callbacks.size();
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < LANE_BATCH_SIZE; i++) {
+                Runnable callback;
+                synchronized (this) {
+                    callback = callbacks.poll();
+                    if (callback == null) {
+                        queued = false;
+                        removed = true;
+                        lanes.remove(key, this);
+                        return;
+                    }
+                    if (waiting > 0) notifyAll();
+                }
+
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // batch used up, queue again behind the other lanes
+            executor.execute(this);
+        }
+    }
+}
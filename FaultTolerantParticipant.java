@@ -1,6 +1,5 @@
-import MessagePackage.Message;
-
-import java.util.function.Consumer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Description:
@@ -8,17 +7,31 @@ import java.util.function.Consumer;
  * It manages all necessary activities for being a fault tolerant participant
  * including:
  * 1. send heart beats
+ * 2. name the spool of the message bus after the participant type, so the readings it spooled survive a restart
+ * Heart beats are driven by the shared ParticipantRuntime rather than a thread of their own.
+ * They are sent with the heart beat call of MessageBus, not as messages, so they only update the
+ * membership state of the message managers and never fill the queues of other participants.
+ * The interval is not fixed: every heart beat is answered with the interval the failure detector of the
+ * message managers asks for, and the next heart beat is scheduled after that interval plus or minus a random
+ * -Dheartbeat.jitter fraction of it (default 0.05), so that participants started together do not beat together.
+ * A message manager that has lost the registration of the participant answers 0; the heart beat call of
+ * MessageBus then registers with it again before it returns, so the next heart beat finds the participant known.
  */
 public class FaultTolerantParticipant {
 
-    private static final int HEART_BEAT_INTERVAL = 2500; // heart beat interval time
+    private static final long FIRST_HEART_BEAT_INTERVAL = 2500; // interval used until a message manager asks for another
+    private static final double HEART_BEAT_JITTER = Double.parseDouble(System.getProperty("heartbeat.jitter", "0.05"));
 
     private ParticipantType participantType; // participant type of caller
-    private Consumer<Message> sendMessage; // SendMessage method from caller
+    private MessageBus mb; // message bus of caller
+    private HeartBeat heartBeat; // running heart beat task, null when not started
+    private ScheduledFuture<?> heartBeatTask; // next scheduled run of the heart beat task
+    private long heartBeatInterval = FIRST_HEART_BEAT_INTERVAL; // current interval in milliseconds
 
-    public FaultTolerantParticipant(ParticipantType type, Consumer<Message> sendMessage) {
+    public FaultTolerantParticipant(ParticipantType type, MessageBus mb) {
         this.participantType = type;
-        this.sendMessage = sendMessage;
+        this.mb = mb;
+        mb.setSpoolName(type.toString());
     }
 
     /***************************************************************************
@@ -31,28 +44,72 @@ public class FaultTolerantParticipant {
      * Exceptions: Exception.
      *
      ****************************************************************************/
-    public void start() throws Exception {
-        HeartBeat hb = new HeartBeat();
-        Thread t = new Thread(hb);
-        t.start();
+    public synchronized void start() throws Exception {
+        if (heartBeat != null) return;
+
+        heartBeat = new HeartBeat();
+        heartBeatTask = ParticipantRuntime.getInstance().schedule(heartBeat, 0);
+    }
+
+    /***************************************************************************
+     * Purpose: This method stops sending heart beats
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized void stop() {
+        if (heartBeat == null) return;
+
+        heartBeatTask.cancel(false);
+        heartBeatTask = null;
+        heartBeat = null;
+    }
+
+    /***************************************************************************
+     * Purpose: Get the interval currently used between heart beats
+     *
+     * Arguments: None.
+     *
+     * Returns: long - milliseconds.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized long getHeartBeatInterval() {
+        return heartBeatInterval;
+    }
+
+    /**
+     * Schedule the next heart beat, unless stopped (or stopped and restarted) in the meantime
+     */
+    private synchronized void scheduleNext(HeartBeat task, long requestedInterval) {
+        if (task != heartBeat) return;
+
+        if (requestedInterval > 0) heartBeatInterval = requestedInterval;
+        double jitter = HEART_BEAT_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        long delay = Math.max(1, Math.round(heartBeatInterval * (1 + jitter)));
+        heartBeatTask = ParticipantRuntime.getInstance().schedule(task, delay);
     }
 
     /**
-     * Heart beat thread
+     * Heart beat task, rescheduling itself with the interval asked for
      */
     private class HeartBeat implements Runnable {
+        private String type = participantType.toString();
 
         @Override
         public void run() {
-            while (true) {
-                Message heartBeat = new Message(MessageType.FAULT_TOLERANT_PARTICIPANT_HEART_BEAT, participantType.toString());
-                sendMessage.accept(heartBeat);
-
-                try {
-                    Thread.sleep(HEART_BEAT_INTERVAL);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            long requestedInterval = 0;
+            try {
+                requestedInterval = mb.HeartBeat(type);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                scheduleNext(this, requestedInterval);
             }
         }
     }
@@ -25,7 +25,7 @@
  * on the local machine.
  *
  * Internal Methods:
- *	static private void ConfirmMessage(MessageManagerInterface ei, String m )
+ *	static private void ConfirmMessage(MessageManagerInterface ei, Message msg )
  *
  ******************************************************************************************************************/
 
@@ -33,18 +33,17 @@ import InstrumentationPackage.*;
 import MessagePackage.*;
 
 import java.util.Arrays;
-import java.util.List;
 
 class HumidityController {
+    static private boolean HumidifierState = false;    // Heater state: false == off, true == on
+    static private boolean DehumidifierState = false;    // Dehumidifier state: false == off, true == on
+
     public static void main(String args[]) {
-        Message Msg = null;                    // Message object
-        List<Message> eq = null;                // Message Queue
         int MsgId = 0;                        // User specified message ID
         MessageBus mb = MessageBus.getInstance();    // Fault tolerant message bus
-        boolean HumidifierState = false;    // Heater state: false == off, true == on
-        boolean DehumidifierState = false;    // Dehumidifier state: false == off, true == on
+        MessageDispatcher md = new MessageDispatcher(mb);    // Dispatches incoming messages to the handlers below
+        ScheduledParticipant participant = new ScheduledParticipant(ParticipantRuntime.getInstance());    // Drives the simulation loop
         int Delay = 2500;                    // The loop delay (2.5 seconds)
-        boolean Done = false;                // Loop termination flag
         FaultTolerantParticipant ftParticipant; // fault tolerant capability
 
         /////////////////////////////////////////////////////////////////////////////////
@@ -72,7 +71,7 @@ class HumidityController {
         /********************************************************************
          ** Here we set up the fault tolerant participant
          *********************************************************************/
-        ftParticipant = new FaultTolerantParticipant(ParticipantType.HUMIDITY_CONTROLLER, ParticipantUtility.sendMessageWrapper(mb));
+        ftParticipant = new FaultTolerantParticipant(ParticipantType.HUMIDITY_CONTROLLER, mb);
         try {
             ftParticipant.start();
         } catch (Exception e) {
@@ -90,12 +89,13 @@ class HumidityController {
         float WinPosY = 0.60f;    //This is the Y position of the message window in terms
         //of a percentage of the screen height
 
-        MessageWindow mw = new MessageWindow("Humidity Controller Status Console", WinPosX, WinPosY);
+        Instrumentation ui = Instrumentation.getInstance();    // Swing, console or no displays (-Dinstrumentation)
+        MessageDisplay mw = ui.CreateMessageWindow("Humidity Controller Status Console", WinPosX, WinPosY);
 
         // Now we put the indicators directly under the humitity status and control panel
 
-        Indicator hi = new Indicator("Humid OFF", mw.GetX(), mw.GetY() + mw.Height());
-        Indicator di = new Indicator("DeHumid OFF", mw.GetX() + (hi.Width() * 2), mw.GetY() + mw.Height());
+        IndicatorDisplay hi = ui.CreateIndicator("Humid OFF", mw.GetX(), mw.GetY() + mw.Height());
+        IndicatorDisplay di = ui.CreateIndicator("DeHumid OFF", mw.GetX() + (hi.Width() * 2), mw.GetY() + mw.Height());
 
         mw.WriteMessage("Registered with the message manager.");
 
@@ -111,109 +111,104 @@ class HumidityController {
         } // catch
 
         /********************************************************************
-         ** Here we start the main simulation loop
+         ** Here we register the message handlers. We are looking for
+         ** MessageIDs = 4, this is a request to turn the humidifier or
+         ** dehumidifier on/off. Note that we get all the messages at once...
+         ** there is a 2.5 second delay between samples,.. so the assumption
+         ** is that there should only be a message at most. If there are more,
+         ** it is the last message that will effect the output of the humidity
+         ** as it would in reality.
          *********************************************************************/
 
-        while (!Done) {
-            try {
-                eq = mb.getAvailableMessages();
-
-            } // try
-
-            catch (Exception e) {
-                e.printStackTrace();
-                mw.WriteMessage("Error getting message queue::" + e);
-
-            } // catch
+        md.register(MessageType.HUMIDITY_COMMAND, "H1", Msg -> { // humidifier on
+            if (!HumidifierState) { // a repeated command is confirmed again but not applied again
+                HumidifierState = true;
+                mw.WriteMessage("Received humidifier on message");
 
-            // If there are messages in the queue, we read through them.
-            // We are looking for MessageIDs = 4, this is a request to turn the
-            // humidifier or dehumidifier on/off. Note that we get all the messages
-            // at once... there is a 2.5 second delay between samples,.. so
-            // the assumption is that there should only be a message at most.
-            // If there are more, it is the last message that will effect the
-            // output of the humidity as it would in reality.
-
-            int qlen = eq.size();
-
-            for (int i = 0; i < qlen; i++) {
-                Msg = eq.get(i);
+            } // if
 
-                if (Msg.GetMessageId() == 4) {
-                    if (Msg.GetMessage().equalsIgnoreCase("H1")) // humidifier on
-                    {
-                        HumidifierState = true;
-                        mw.WriteMessage("Received humidifier on message");
+            // Confirm that the message was recieved and acted on
 
-                        // Confirm that the message was recieved and acted on
+            ConfirmMessage(mb, ControlMessages.HUMIDIFIER_ON_CONFIRMED);
+        });
 
-                        ConfirmMessage(mb, "H1");
+        md.register(MessageType.HUMIDITY_COMMAND, "H0", Msg -> { // humidifier off
+            if (HumidifierState) { // a repeated command is confirmed again but not applied again
+                HumidifierState = false;
+                mw.WriteMessage("Received humidifier off message");
 
-                    } // if
+            } // if
 
-                    if (Msg.GetMessage().equalsIgnoreCase("H0")) // humidifier off
-                    {
-                        HumidifierState = false;
-                        mw.WriteMessage("Received humidifier off message");
+            // Confirm that the message was recieved and acted on
 
-                        // Confirm that the message was recieved and acted on
+            ConfirmMessage(mb, ControlMessages.HUMIDIFIER_OFF_CONFIRMED);
+        });
 
-                        ConfirmMessage(mb, "H0");
+        md.register(MessageType.HUMIDITY_COMMAND, "D1", Msg -> { // dehumidifier on
+            if (!DehumidifierState) { // a repeated command is confirmed again but not applied again
+                DehumidifierState = true;
+                mw.WriteMessage("Received dehumidifier on message");
 
-                    } // if
+            } // if
 
-                    if (Msg.GetMessage().equalsIgnoreCase("D1")) // dehumidifier on
-                    {
-                        DehumidifierState = true;
-                        mw.WriteMessage("Received dehumidifier on message");
+            // Confirm that the message was recieved and acted on
 
-                        // Confirm that the message was recieved and acted on
+            ConfirmMessage(mb, ControlMessages.DEHUMIDIFIER_ON_CONFIRMED);
+        });
 
-                        ConfirmMessage(mb, "D1");
+        md.register(MessageType.HUMIDITY_COMMAND, "D0", Msg -> { // dehumidifier off
+            if (DehumidifierState) { // a repeated command is confirmed again but not applied again
+                DehumidifierState = false;
+                mw.WriteMessage("Received dehumidifier off message");
 
-                    } // if
+            } // if
 
-                    if (Msg.GetMessage().equalsIgnoreCase("D0")) // dehumidifier off
-                    {
-                        DehumidifierState = false;
-                        mw.WriteMessage("Received dehumidifier off message");
+            // Confirm that the message was recieved and acted on
 
-                        // Confirm that the message was recieved and acted on
+            ConfirmMessage(mb, ControlMessages.DEHUMIDIFIER_OFF_CONFIRMED);
+        });
 
-                        ConfirmMessage(mb, "D0");
+        // If the message ID == 99 then this is a signal that the simulation
+        // is to end. At this point, the participant is stopped and this
+        // process unregisters from the message manager.
 
-                    } // if
+        participant.haltOn(md, () -> {
+            try {
+                mb.UnRegister();
 
-                } // if
+            } // try
 
-                // If the message ID == 99 then this is a signal that the simulation
-                // is to end. At this point, the loop termination flag is set to
-                // true and this process unregisters from the message manager.
+            catch (Exception e) {
+                mw.WriteMessage("Error unregistering: " + e);
 
-                if (Msg.GetMessageId() == 99) {
-                    Done = true;
+            } // catch
 
-                    try {
-                        mb.UnRegister();
+            mw.WriteMessage("\n\nSimulation Stopped. \n");
 
-                    } // try
+            // Get rid of the indicators. The message panel is left for the
+            // user to exit so they can see the last message posted.
 
-                    catch (Exception e) {
-                        mw.WriteMessage("Error unregistering: " + e);
+            hi.dispose();
+            di.dispose();
+        });
 
-                    } // catch
+        /********************************************************************
+         ** Here we start the main simulation loop
+         *********************************************************************/
 
-                    mw.WriteMessage("\n\nSimulation Stopped. \n");
+        participant.every(Delay, () -> {
+            // Pull the message queue and dispatch every message to its handler
 
-                    // Get rid of the indicators. The message panel is left for the
-                    // user to exit so they can see the last message posted.
+            try {
+                md.poll();
 
-                    hi.dispose();
-                    di.dispose();
+            } // try
 
-                } // if
+            catch (Exception e) {
+                e.printStackTrace();
+                mw.WriteMessage("Error getting message queue::" + e);
 
-            } // for
+            } // catch
 
             // Update the lamp status
 
@@ -242,17 +237,23 @@ class HumidityController {
 
             } // if
 
-            try {
-                Thread.sleep(Delay);
+        }); // every
 
-            } // try
+        // Stop heart beats together with the simulation and wait until the
+        // halt message has been handled
 
-            catch (Exception e) {
-                System.out.println("Sleep error:: " + e);
+        participant.onStop(ftParticipant::stop);
+        participant.start();
 
-            } // catch
+        try {
+            participant.awaitStop();
+
+        } // try
+
+        catch (InterruptedException e) {
+            System.out.println("Interrupted:: " + e);
 
-        } // while
+        } // catch
 
 
     } // main
@@ -260,13 +261,13 @@ class HumidityController {
     /***************************************************************************
      * CONCRETE METHOD:: ConfirmMessage
      * Purpose: This method posts the specified message to the specified message
-     * manager. This method assumes an message ID of -4 which indicates a confirma-
-     * tion of a command.
+     * manager. The message is one of the shared confirmations in ControlMessages
+     * (message ID of -4) which indicate a confirmation of a command.
      *
      * Arguments: MessageManagerInterface ei - this is the messagemanger interface
      *			 where the message will be posted.
      *
-     *			 string m - this is the received command.
+     *			 Message msg - this is the confirmation of the received command.
      *
      * Returns: none
      *
@@ -274,11 +275,7 @@ class HumidityController {
      *
      ***************************************************************************/
 
-    static private void ConfirmMessage(MessageBus ei, String m) {
-        // Here we create the message.
-
-        Message msg = new Message((int) -4, m);
-
+    static private void ConfirmMessage(MessageBus ei, Message msg) {
         // Here we send the message to the message manager.
 
         try {
@@ -28,19 +28,18 @@ import MessagePackage.*;
 import java.util.*;
 
 class HumiditySensor {
+    static private boolean HumidifierState = false;    // Humidifier state: false == off, true == on
+    static private boolean DehumidifierState = false;    // Dehumidifier state: false == off, true == on
+    static private float RelativeHumidity;                // Current simulated ambient room humidity
 
     public static void main(String args[]) {
         String MsgMgrIP;                    // Message Manager IP address
-        Message Msg = null;                    // Message object
-        List<Message> eq = null;                // Message Queue
         int MsgId = 0;                        // User specified message ID
         MessageBus em = MessageBus.getInstance();    // Fault tolerant message bus
-        boolean HumidifierState = false;    // Humidifier state: false == off, true == on
-        boolean DehumidifierState = false;    // Dehumidifier state: false == off, true == on
-        float RelativeHumidity;                // Current simulated ambient room humidity
+        MessageDispatcher md = new MessageDispatcher(em);    // Dispatches incoming messages to the handlers below
+        ScheduledParticipant participant = new ScheduledParticipant(ParticipantRuntime.getInstance());    // Drives the simulation loop
         float DriftValue;                    // The amount of humidity gained or lost
         int Delay = 2500;                    // The loop delay (2.5 seconds)
-        boolean Done = false;                // Loop termination flag
         FaultTolerantParticipant ftParticipant; // fault tolerant capability
 
         /////////////////////////////////////////////////////////////////////////////////
@@ -70,7 +69,7 @@ class HumiditySensor {
             /********************************************************************
              ** Here we set up the fault tolerant participant
              *********************************************************************/
-            ftParticipant = new FaultTolerantParticipant(ParticipantType.HUMIDITY_SENSOR, ParticipantUtility.sendMessageWrapper(MessageBus.getInstance()));
+            ftParticipant = new FaultTolerantParticipant(ParticipantType.HUMIDITY_SENSOR, MessageBus.getInstance());
             try {
                 ftParticipant.start();
             } catch (Exception e) {
@@ -86,7 +85,7 @@ class HumiditySensor {
             float WinPosY = 0.60f;    //This is the Y position of the message window in terms
             //of a percentage of the screen height
 
-            MessageWindow mw = new MessageWindow("Humidity Sensor", WinPosX, WinPosY);
+            MessageDisplay mw = Instrumentation.getInstance().CreateMessageWindow("Humidity Sensor", WinPosX, WinPosY);
 
             mw.WriteMessage("Registered with the message manager.");
 
@@ -118,93 +117,63 @@ class HumiditySensor {
             // mw.WriteMessage("   Drift Value Set:: " + DriftValue ); // Used to debug the random drift values
 
             /********************************************************************
-             ** Here we start the main simulation loop
+             ** Here we register the message handlers. We are looking for
+             ** MessageIDs = -4, this means the the humidify or dehumidifier has
+             ** been turned on/off. Note that we get all the messages from the
+             ** queue at once... there is a 2.5 second delay between samples,..
+             ** so the assumption is that there should only be a message at most.
+             ** If there are more, it is the last message that will effect the
+             ** output of the humidity as it would in reality.
              *********************************************************************/
 
-            mw.WriteMessage("Beginning Simulation... ");
-
+            md.register(MessageType.HUMIDITY_CONFIRMATION, "H1", Msg -> HumidifierState = true); // humidifier on
+            md.register(MessageType.HUMIDITY_CONFIRMATION, "H0", Msg -> HumidifierState = false); // humidifier off
+            md.register(MessageType.HUMIDITY_CONFIRMATION, "D1", Msg -> DehumidifierState = true); // dehumidifier on
+            md.register(MessageType.HUMIDITY_CONFIRMATION, "D0", Msg -> DehumidifierState = false); // dehumidifier off
 
-            while (!Done) {
-                // Post the current relative humidity
-
-                PostHumidity(em, RelativeHumidity);
-
-                mw.WriteMessage("Current Relative Humidity:: " + RelativeHumidity + "%");
-
-                // Get the message queue
+            // If the message ID == 99 then this is a signal that the simulation
+            // is to end. At this point, the participant is stopped and this
+            // process unregisters from the message manager.
 
+            participant.haltOn(md, () -> {
                 try {
-                    eq = em.getAvailableMessages();
+                    em.UnRegister();
 
                 } // try
 
                 catch (Exception e) {
-                    mw.WriteMessage("Error getting message queue::" + e);
+                    mw.WriteMessage("Error unregistering: " + e);
 
                 } // catch
 
-                // If there are messages in the queue, we read through them.
-                // We are looking for MessageIDs = -4, this means the the humidify or
-                // dehumidifier has been turned on/off. Note that we get all the messages
-                // from the queue at once... there is a 2.5 second delay between samples,..
-                // so the assumption is that there should only be a message at most.
-                // If there are more, it is the last message that will effect the
-                // output of the humidity as it would in reality.
-
-                int qlen = eq.size();
+                mw.WriteMessage("\n\nSimulation Stopped. \n");
+            });
 
-                for (int i = 0; i < qlen; i++) {
-                    Msg = eq.get(i);
-
-                    if (Msg.GetMessageId() == -4) {
-                        if (Msg.GetMessage().equalsIgnoreCase("H1")) // humidifier on
-                        {
-                            HumidifierState = true;
-
-                        } // if
-
-                        if (Msg.GetMessage().equalsIgnoreCase("H0")) // humidifier off
-                        {
-                            HumidifierState = false;
-
-                        } // if
-
-                        if (Msg.GetMessage().equalsIgnoreCase("D1")) // dehumidifier on
-                        {
-                            DehumidifierState = true;
-
-                        } // if
-
-                        if (Msg.GetMessage().equalsIgnoreCase("D0")) // dehumidifier off
-                        {
-                            DehumidifierState = false;
-
-                        } // if
+            /********************************************************************
+             ** Here we start the main simulation loop
+             *********************************************************************/
 
-                    } // if
+            mw.WriteMessage("Beginning Simulation... ");
 
-                    // If the message ID == 99 then this is a signal that the simulation
-                    // is to end. At this point, the loop termination flag is set to
-                    // true and this process unregisters from the message manager.
 
-                    if (Msg.GetMessageId() == 99) {
-                        Done = true;
+            participant.every(Delay, () -> {
+                // Post the current relative humidity
 
-                        try {
-                            em.UnRegister();
+                PostHumidity(em, RelativeHumidity);
 
-                        } // try
+                mw.WriteMessage("Current Relative Humidity:: " + RelativeHumidity + "%");
 
-                        catch (Exception e) {
-                            mw.WriteMessage("Error unregistering: " + e);
+                // Pull the message queue and dispatch every message to its handler
 
-                        } // catch
+                try {
+                    md.poll();
 
-                        mw.WriteMessage("\n\nSimulation Stopped. \n");
+                } // try
 
-                    } // if
+                catch (Exception e) {
+                    mw.WriteMessage("Error getting message queue::" + e);
 
-                } // for
+                } // catch
 
                 // Now we trend the relative humidity according to the status of the
                 // humidifier/dehumidifier controller.
@@ -224,19 +193,23 @@ class HumiditySensor {
 
                 } // if dehumidifier is on
 
-                // Here we wait for a 2.5 seconds before we start the next sample
+            }); // every
 
-                try {
-                    Thread.sleep(Delay);
+            // Stop heart beats together with the simulation and wait until the
+            // halt message has been handled
 
-                } // try
+            participant.onStop(ftParticipant::stop);
+            participant.start();
 
-                catch (Exception e) {
-                    mw.WriteMessage("Sleep error:: " + e);
+            try {
+                participant.awaitStop();
 
-                } // catch
+            } // try
+
+            catch (InterruptedException e) {
+                System.out.println("Interrupted:: " + e);
 
-            } // while
+            } // catch
 
         } else {
 
@@ -296,7 +269,8 @@ class HumiditySensor {
     /***************************************************************************
      * CONCRETE METHOD:: PostHumidity
      * Purpose: This method posts the specified relative humidity value to the
-     * specified message manager. This method assumes an message ID of 2.
+     * specified message manager. This method assumes an message ID of 2. The
+     * reading travels as a float payload rather than as text.
      *
      * Arguments: MessageManagerInterface ei - this is the messagemanger interface
      *			 where the message will be posted.
@@ -310,9 +284,15 @@ class HumiditySensor {
      ***************************************************************************/
 
     static private void PostHumidity(MessageBus ei, float humidity) {
-        // Here we create the message.
+        // Here we take a recycled message from the pool and set the reading.
+
+        MessagePool pool = MessagePool.getInstance();
+        Message msg = pool.acquire(MessageType.HUMIDITY_READING);
+        msg.SetFloatValue(humidity);
+
+        // The reading starts a latency trace if tracing is on (-Dmessage.trace=true).
 
-        Message msg = new Message((int) 2, String.valueOf(humidity));
+        MessageTracer.getInstance().start(msg);
 
         // Here we send the message to the message manager.
 
@@ -327,6 +307,10 @@ class HumiditySensor {
 
         } // catch
 
+        // The message has been serialized by now, so it can be reused.
+
+        pool.release(msg);
+
     } // PostHumidity
 
 } // Humidity Sensor
\ No newline at end of file
@@ -0,0 +1,158 @@
+/******************************************************************************************************************
+* File:ConsoleIndicator.java
+*
+* Description:
+*
+* This class is the headless counterpart of Indicator. It keeps the lamp color and label and prints a line on an
+* output stream whenever either of them changes; without an output stream nothing is printed. The geometry is
+* computed like Indicator does, against the nominal screen of ConsoleMessageWindow.
+*
+* Parameters: SEE THE CONSTRUCTORS BELOW
+*
+******************************************************************************************************************/
+package InstrumentationPackage;
+
+import java.io.PrintStream;
+
+public class ConsoleIndicator implements IndicatorDisplay
+{
+	private static final String[] ColorNames = { "black", "green", "yellow", "red" };
+
+	private PrintStream Out;		// Where changes are printed, null to drop them
+	private int Height;				// Nominal width and height of the indicator in pixels
+	private int UpperLeftX;
+	private int UpperLeftY;
+	private String MessageLabel;
+	private int LampColor;			// 0=black, 1=green, 2=yellow, 3=red
+
+	/***************************************************************************
+	* Constructor:: ConsoleIndicator
+	* Purpose: Set up an indicator at a position given as a percentage of the
+	*		   nominal screen size
+	*
+	* Arguments: String Label - the indicator label
+	*			 float Xpos, Ypos - position in percentage of the screen size
+	*			 int InitialColor - 0=black, 1=green, 2=yellow, 3=red
+	*			 PrintStream Out - where changes are printed, null to drop them
+	*
+	* Returns: ConsoleIndicator
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public ConsoleIndicator( String Label, float Xpos, float Ypos, int InitialColor, PrintStream Out )
+	{
+		this( Label, (int)(ConsoleMessageWindow.NOMINAL_SCREEN_WIDTH * Xpos), (int)(ConsoleMessageWindow.NOMINAL_SCREEN_HEIGHT * Ypos), InitialColor, Out );
+
+	} // constructor
+
+	/***************************************************************************
+	* Constructor:: ConsoleIndicator
+	* Purpose: Set up an indicator at a position given in pixels
+	*
+	* Arguments: String Label - the indicator label
+	*			 int Xpos, Ypos - position in pixels
+	*			 int InitialColor - 0=black, 1=green, 2=yellow, 3=red
+	*			 PrintStream Out - where changes are printed, null to drop them
+	*
+	* Returns: ConsoleIndicator
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public ConsoleIndicator( String Label, int Xpos, int Ypos, int InitialColor, PrintStream Out )
+	{
+		this.Out = Out;
+		MessageLabel = Label;
+		LampColor = InitialColor;
+		Height = (int)(Math.min( ConsoleMessageWindow.NOMINAL_SCREEN_WIDTH, ConsoleMessageWindow.NOMINAL_SCREEN_HEIGHT ) * 0.1);
+		UpperLeftX = Xpos;
+		UpperLeftY = Ypos;
+
+	} // constructor
+
+	public int GetX()
+	{
+		return ( UpperLeftX );
+
+	} // GetX
+
+	public int GetY()
+	{
+		return ( UpperLeftY );
+
+	} // GetY
+
+	public int Height()
+	{
+		return ( Height );
+
+	} // Height
+
+	public int Width()
+	{
+		return ( Height );
+
+	} // Width
+
+	/***************************************************************************
+	* CONCRETE METHOD:: SetLampColorAndMessage
+	* Purpose: Change the lamp color and the label, printing the new state if
+	*		   either of them changed
+	*
+	* Arguments: String s - the new indicator label
+	*			 int c - the new indicator color where 0=black, 1=green,
+	*			 2=yellow, and 3=red
+	*
+	* Returns: none
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public synchronized void SetLampColorAndMessage( String s, int c )
+	{
+		if ( c == LampColor && s.equals( MessageLabel ) )
+		{
+			return;
+
+		} // if
+
+		LampColor = c;
+		MessageLabel = s;
+		Print();
+
+	} // SetLampColorAndMessage
+
+	public synchronized void SetLampColor( int c )
+	{
+		SetLampColorAndMessage( MessageLabel, c );
+
+	} // SetLampColor
+
+	public synchronized void SetMessage( String m )
+	{
+		SetLampColorAndMessage( m, LampColor );
+
+	} // SetMessage
+
+	public void dispose()
+	{
+	} // dispose
+
+	private void Print()
+	{
+		if ( Out == null )
+		{
+			return;
+
+		} // if
+
+		String Color = ( LampColor >= 0 && LampColor < ColorNames.length ) ? ColorNames[ LampColor ] : String.valueOf( LampColor );
+		Out.println( "[Indicator] " + MessageLabel + " (" + Color + ")" );
+
+	} // Print
+
+} // ConsoleIndicator
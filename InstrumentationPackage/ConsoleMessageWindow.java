@@ -0,0 +1,150 @@
+/******************************************************************************************************************
+* File:ConsoleMessageWindow.java
+*
+* Description:
+*
+* This class is the headless counterpart of MessageWindow. Messages are printed on an output stream prefixed with
+* the window title and the same time stamp format MessageWindow uses; without an output stream they are dropped.
+* The geometry is computed like MessageWindow does, against a nominal screen, so participants that lay out their
+* displays relative to each other keep working.
+*
+* Parameters: SEE THE CONSTRUCTORS BELOW
+*
+******************************************************************************************************************/
+package InstrumentationPackage;
+
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+public class ConsoleMessageWindow implements MessageDisplay
+{
+	static final int NOMINAL_SCREEN_WIDTH = 1280;	// Screen size assumed when there is no display
+	static final int NOMINAL_SCREEN_HEIGHT = 1024;
+
+	private static final DateTimeFormatter TimeStampFormat = DateTimeFormatter.ofPattern( "yyyy MM dd::hh:mm:ss:SSS" );
+
+	private String Title;			// Prefix of every line
+	private PrintStream Out;		// Where lines are printed, null to drop them
+	private int WindowWidth;		// Nominal width of the window in pixels
+	private int WindowHeight;		// Nominal height of the window in pixels
+	private int UpperLeftX;			// The window's upper left hand corner's X position
+	private int UpperLeftY;			// The window's upper left hand corner's Y position
+
+	/***************************************************************************
+	* Constructor:: ConsoleMessageWindow
+	* Purpose: Set up a console window at a position given as a percentage of
+	*		   the nominal screen size
+	*
+	* Arguments: String Title - the window title, printed before every line
+	*			 float Xpos, Ypos - position in percentage of the screen size
+	*			 PrintStream Out - where lines are printed, null to drop them
+	*
+	* Returns: ConsoleMessageWindow
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public ConsoleMessageWindow( String Title, float Xpos, float Ypos, PrintStream Out )
+	{
+		this.Title = Title;
+		this.Out = Out;
+		WindowHeight = (int)(NOMINAL_SCREEN_HEIGHT * 0.20);
+		WindowWidth  = (int)(NOMINAL_SCREEN_WIDTH * 0.5);
+		UpperLeftX = (int)(NOMINAL_SCREEN_WIDTH * Xpos);
+		UpperLeftY = (int)(NOMINAL_SCREEN_HEIGHT * Ypos);
+
+	} // constructor
+
+	/***************************************************************************
+	* Constructor:: ConsoleMessageWindow
+	* Purpose: Set up a console window at a position given in pixels
+	*
+	* Arguments: String Title - the window title, printed before every line
+	*			 int Xpos, Ypos - position in pixels
+	*			 PrintStream Out - where lines are printed, null to drop them
+	*
+	* Returns: ConsoleMessageWindow
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public ConsoleMessageWindow( String Title, int Xpos, int Ypos, PrintStream Out )
+	{
+		this.Title = Title;
+		this.Out = Out;
+		WindowHeight = (int)(NOMINAL_SCREEN_HEIGHT * 0.25);
+		WindowWidth  = (int)(NOMINAL_SCREEN_WIDTH * 0.5);
+		UpperLeftX = Xpos;
+		UpperLeftY = Ypos;
+
+	} // constructor
+
+	public int GetX()
+	{
+		return ( UpperLeftX );
+
+	} // GetX
+
+	public int GetY()
+	{
+		return ( UpperLeftY );
+
+	} // GetY
+
+	public int Height()
+	{
+		return ( WindowHeight );
+
+	} // Height
+
+	public int Width()
+	{
+		return ( WindowWidth );
+
+	} // Width
+
+	public int TermHeight()
+	{
+		return ( NOMINAL_SCREEN_HEIGHT );
+
+	} // TermHeight
+
+	public int TermWidth()
+	{
+		return ( NOMINAL_SCREEN_WIDTH );
+
+	} // TermWidth
+
+	/***************************************************************************
+	* CONCRETE METHOD:: WriteMessage
+	* Purpose: Print a message prefixed with the window title and a time stamp.
+	*		   Nothing is formatted when there is no output stream.
+	*
+	* Arguments: String message
+	*
+	* Returns: none
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public void WriteMessage( String message )
+	{
+		if ( Out == null )
+		{
+			return;
+
+		} // if
+
+		Out.println( "[" + Title + "] " + TimeStampFormat.format( LocalDateTime.now() ) + ":: " + message );
+
+	} // WriteMessage
+
+	public void dispose()
+	{
+	} // dispose
+
+} // ConsoleMessageWindow
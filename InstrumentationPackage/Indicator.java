@@ -13,6 +13,9 @@
 * yellow, or red. A short message can be displayed below the indicator lamp as well. Both the lamp color and the
 * message can be changed at run time.
 *
+* Setting the color or message the indicator already shows does nothing, so participants may set their state on
+* every cycle. Real changes call repaint(), which the AWT event queue coalesces into one paint per frame, and the
+* lamp and label are rendered once into an image that every paint reuses until the state changes again.
 *
 * Parameters: SEE THE CONSTRUCTOR BELOW
 *
@@ -30,8 +33,10 @@ package InstrumentationPackage;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Objects;
 
-public class Indicator extends JFrame
+public class Indicator extends JFrame implements IndicatorDisplay
 {
 	private int Height;
 	private int UpperLeftX;
@@ -40,6 +45,8 @@ public class Indicator extends JFrame
 	private Color IluminationColor = Color.black;
 	private Color TextColor = Color.black;
 	private JFrame IndicatorWindow;
+	private BufferedImage LampImage = null;		// Rendered lamp and label, null when the state changed
+	private final Object StateLock = new Object();	// Guards the state shared with the event dispatch thread
 
 	/***************************************************************************
 	* Constructor:: Indicator
@@ -382,27 +389,21 @@ public class Indicator extends JFrame
 
 	public void SetLampColorAndMessage(String s, int c)
 	{
-		switch( c )
+		synchronized ( StateLock )
 		{
-			case 0:
-				IluminationColor = Color.black;
-				break;
+			Color NewColor = LampColorOf( c, IluminationColor );
 
-			case 1:
-				IluminationColor = Color.green;
-				break;
+			if ( NewColor.equals( IluminationColor ) && Objects.equals( s, MessageLabel ) )
+			{
+				return;
 
-			case 2:
-				IluminationColor = Color.yellow;
-				break;
+			} // if
 
-			case 3:
-				IluminationColor = Color.red;
-				break;
-
-		} // switch
+			IluminationColor = NewColor;
+			MessageLabel = s;
+			LampImage = null;
 
-		MessageLabel = s;
+		} // synchronized
 
 		repaint();
 
@@ -424,27 +425,11 @@ public class Indicator extends JFrame
 
 	public void SetLampColor(int c)
 	{
-		switch( c )
+		synchronized ( StateLock )
 		{
-			case 0:
-				IluminationColor = Color.black;
-				break;
+			SetLampColorAndMessage( MessageLabel, c );
 
-			case 1:
-				IluminationColor = Color.green;
-				break;
-
-			case 2:
-				IluminationColor = Color.yellow;
-				break;
-
-			case 3:
-				IluminationColor = Color.red;
-				break;
-
-		} // switch
-
-		repaint();
+		} // synchronized
 
 	} // SetLampColor
 
@@ -463,8 +448,7 @@ public class Indicator extends JFrame
 
 	public void SetMessage(String m)
 	{
-		MessageLabel = m;
-		repaint();
+		SetLampColorAndMessage( m, -1 );	// any other number keeps the current color
 
 	} // SetMessage
 
@@ -489,15 +473,84 @@ public class Indicator extends JFrame
 	{
 		super.paint(g);
 
-		FontMetrics fm = g.getFontMetrics();
-
-		int xLabelPosition = (int)(Height*0.5)- (int)(fm.stringWidth(MessageLabel)*0.5);
-		int yLabelPosition = (int)(Height*0.90);
-		g.setColor(IluminationColor);
-		g.fillRoundRect( (int)(Height*0.15), (int)(Height*0.35), (int)(Height*0.70), (int)(Height*0.40), (int)(Height*0.20), (int)(Height*0.20) );
-		g.setColor(TextColor);
-		g.drawString( MessageLabel, xLabelPosition, yLabelPosition );
+		g.drawImage( GetLampImage( g.getFont() ), 0, 0, null );
 
 	} // paint
 
+	/***************************************************************************
+	* CONCRETE Class::GetLampImage
+	* Purpose: This method returns the rendered lamp and label, rendering them
+	* first if the state changed since the last paint.
+	*
+	* Arguments: Font f - the font of the label
+	*
+	* Returns: BufferedImage
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	private BufferedImage GetLampImage(Font f)
+	{
+		synchronized ( StateLock )
+		{
+			if ( LampImage == null )
+			{
+				LampImage = new BufferedImage( Height, Height, BufferedImage.TYPE_INT_ARGB );
+				Graphics g = LampImage.createGraphics();
+				g.setFont( f );
+
+				FontMetrics fm = g.getFontMetrics();
+
+				int xLabelPosition = (int)(Height*0.5)- (int)(fm.stringWidth(MessageLabel)*0.5);
+				int yLabelPosition = (int)(Height*0.90);
+				g.setColor(IluminationColor);
+				g.fillRoundRect( (int)(Height*0.15), (int)(Height*0.35), (int)(Height*0.70), (int)(Height*0.40), (int)(Height*0.20), (int)(Height*0.20) );
+				g.setColor(TextColor);
+				g.drawString( MessageLabel, xLabelPosition, yLabelPosition );
+				g.dispose();
+
+			} // if
+
+			return LampImage;
+
+		} // synchronized
+
+	} // GetLampImage
+
+	/***************************************************************************
+	* CONCRETE Class::LampColorOf
+	* Purpose: This method maps a color number to its color.
+	*
+	* Arguments: int c - 0=black, 1=green, 2=yellow, and 3=red
+	*			 Color Current - returned for any other number
+	*
+	* Returns: Color
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	private static Color LampColorOf(int c, Color Current)
+	{
+		switch( c )
+		{
+			case 0:
+				return Color.black;
+
+			case 1:
+				return Color.green;
+
+			case 2:
+				return Color.yellow;
+
+			case 3:
+				return Color.red;
+
+		} // switch
+
+		return Current;
+
+	} // LampColorOf
+
 } // Indicator
\ No newline at end of file
@@ -0,0 +1,27 @@
+/******************************************************************************************************************
+* File:IndicatorDisplay.java
+*
+* Description:
+*
+* This interface is an indicator lamp of a participant: a colored lamp with a label. Indicator draws it in a Swing
+* window; ConsoleIndicator prints every change on standard output or drops it. Participants get their indicators
+* from Instrumentation.
+*
+* Colors: 0=black, 1=green, 2=yellow, 3=red
+*
+******************************************************************************************************************/
+package InstrumentationPackage;
+
+public interface IndicatorDisplay
+{
+	int GetX();					// X position of the upper left hand corner in pixels
+	int GetY();					// Y position of the upper left hand corner in pixels
+	int Height();				// Height of the indicator in pixels
+	int Width();				// Width of the indicator in pixels
+
+	void SetLampColorAndMessage( String s, int c );	// Change the lamp color and the label
+	void SetLampColor( int c );						// Change the lamp color
+	void SetMessage( String m );					// Change the label
+	void dispose();									// Release the indicator
+
+} // IndicatorDisplay
@@ -0,0 +1,219 @@
+/******************************************************************************************************************
+* File:Instrumentation.java
+*
+* Description:
+*
+* This class creates the message displays and indicators of a participant. The kind of display is selected at
+* launch with -Dinstrumentation=MODE:
+*
+*	swing	- Swing windows (MessageWindow, Indicator). This is the default.
+*	console	- lines and indicator changes are printed on standard output; no display is needed.
+*	none	- nothing is shown. Geometry and state are still kept, so participants behave the same.
+*
+* The console and none modes never load AWT, so dense headless deployments and benchmarks can run on servers
+* without X and without the heap of one JFrame per display. Notice that in a single process there is only one
+* instance of Instrumentation.
+*
+* Internal Methods:
+*
+*	public static Instrumentation getInstance()
+*	public MessageDisplay CreateMessageWindow( String Title, float Xpos, float Ypos )
+*	public MessageDisplay CreateMessageWindow( String Title, int Xpos, int Ypos )
+*	public IndicatorDisplay CreateIndicator( String Label, float Xpos, float Ypos )
+*	public IndicatorDisplay CreateIndicator( String Label, int Xpos, int Ypos )
+*	public IndicatorDisplay CreateIndicator( String Label, int Xpos, int Ypos, int InitialColor )
+*
+******************************************************************************************************************/
+package InstrumentationPackage;
+
+import java.io.PrintStream;
+
+public class Instrumentation
+{
+	public static final String SWING = "swing";
+	public static final String CONSOLE = "console";
+	public static final String NONE = "none";
+
+	private static final String MODE_PROPERTY = "instrumentation";
+	private static Instrumentation instance = null;
+
+	private String Mode;		// One of SWING, CONSOLE or NONE
+	private PrintStream Out;	// Output of the console displays, null in NONE mode
+
+	private Instrumentation( String Mode )
+	{
+		this.Mode = Mode;
+		this.Out = CONSOLE.equals( Mode ) ? System.out : null;
+
+	} // constructor
+
+	/***************************************************************************
+	* CONCRETE METHOD:: getInstance
+	* Purpose: Users of this class get the singleton by this method. The mode
+	*		   is read from the instrumentation system property; unknown values
+	*		   fall back to swing.
+	*
+	* Arguments: none
+	*
+	* Returns: Instrumentation
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public static synchronized Instrumentation getInstance()
+	{
+		if ( instance == null )
+		{
+			String Mode = System.getProperty( MODE_PROPERTY, SWING ).toLowerCase();
+
+			if ( !CONSOLE.equals( Mode ) && !NONE.equals( Mode ) )
+			{
+				Mode = SWING;
+
+			} // if
+
+			instance = new Instrumentation( Mode );
+
+		} // if
+
+		return instance;
+
+	} // getInstance
+
+	public String GetMode()
+	{
+		return Mode;
+
+	} // GetMode
+
+	/***************************************************************************
+	* CONCRETE METHOD:: CreateMessageWindow
+	* Purpose: Create a message display at a position given as a percentage of
+	*		   the screen size (see MessageWindow)
+	*
+	* Arguments: String Title - the window title
+	*			 float Xpos, Ypos - position in percentage of the screen size
+	*
+	* Returns: MessageDisplay
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public MessageDisplay CreateMessageWindow( String Title, float Xpos, float Ypos )
+	{
+		if ( SWING.equals( Mode ) )
+		{
+			return new MessageWindow( Title, Xpos, Ypos );
+
+		} // if
+
+		return new ConsoleMessageWindow( Title, Xpos, Ypos, Out );
+
+	} // CreateMessageWindow
+
+	/***************************************************************************
+	* CONCRETE METHOD:: CreateMessageWindow
+	* Purpose: Create a message display at a position given in pixels
+	*
+	* Arguments: String Title - the window title
+	*			 int Xpos, Ypos - position in pixels
+	*
+	* Returns: MessageDisplay
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public MessageDisplay CreateMessageWindow( String Title, int Xpos, int Ypos )
+	{
+		if ( SWING.equals( Mode ) )
+		{
+			return new MessageWindow( Title, Xpos, Ypos );
+
+		} // if
+
+		return new ConsoleMessageWindow( Title, Xpos, Ypos, Out );
+
+	} // CreateMessageWindow
+
+	/***************************************************************************
+	* CONCRETE METHOD:: CreateIndicator
+	* Purpose: Create an indicator at a position given as a percentage of the
+	*		   screen size (see Indicator)
+	*
+	* Arguments: String Label - the indicator label
+	*			 float Xpos, Ypos - position in percentage of the screen size
+	*
+	* Returns: IndicatorDisplay
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public IndicatorDisplay CreateIndicator( String Label, float Xpos, float Ypos )
+	{
+		if ( SWING.equals( Mode ) )
+		{
+			return new Indicator( Label, Xpos, Ypos );
+
+		} // if
+
+		return new ConsoleIndicator( Label, Xpos, Ypos, 0, Out );
+
+	} // CreateIndicator
+
+	/***************************************************************************
+	* CONCRETE METHOD:: CreateIndicator
+	* Purpose: Create an indicator at a position given in pixels
+	*
+	* Arguments: String Label - the indicator label
+	*			 int Xpos, Ypos - position in pixels
+	*
+	* Returns: IndicatorDisplay
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public IndicatorDisplay CreateIndicator( String Label, int Xpos, int Ypos )
+	{
+		if ( SWING.equals( Mode ) )
+		{
+			return new Indicator( Label, Xpos, Ypos );
+
+		} // if
+
+		return new ConsoleIndicator( Label, Xpos, Ypos, 0, Out );
+
+	} // CreateIndicator
+
+	/***************************************************************************
+	* CONCRETE METHOD:: CreateIndicator
+	* Purpose: Create an indicator at a position given in pixels with an
+	*		   initial lamp color
+	*
+	* Arguments: String Label - the indicator label
+	*			 int Xpos, Ypos - position in pixels
+	*			 int InitialColor - 0=black, 1=green, 2=yellow, 3=red
+	*
+	* Returns: IndicatorDisplay
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public IndicatorDisplay CreateIndicator( String Label, int Xpos, int Ypos, int InitialColor )
+	{
+		if ( SWING.equals( Mode ) )
+		{
+			return new Indicator( Label, Xpos, Ypos, InitialColor );
+
+		} // if
+
+		return new ConsoleIndicator( Label, Xpos, Ypos, InitialColor, Out );
+
+	} // CreateIndicator
+
+} // Instrumentation
@@ -0,0 +1,25 @@
+/******************************************************************************************************************
+* File:MessageDisplay.java
+*
+* Description:
+*
+* This interface is the message console of a participant: a list of time stamped lines plus the geometry other
+* displays are laid out against. MessageWindow shows the lines in a Swing window; ConsoleMessageWindow prints them
+* on standard output or drops them. Participants get their display from Instrumentation.
+*
+******************************************************************************************************************/
+package InstrumentationPackage;
+
+public interface MessageDisplay
+{
+	int GetX();					// X position of the upper left hand corner in pixels
+	int GetY();					// Y position of the upper left hand corner in pixels
+	int Height();				// Height of the display in pixels
+	int Width();				// Width of the display in pixels
+	int TermHeight();			// Height of the (possibly nominal) screen in pixels
+	int TermWidth();			// Width of the (possibly nominal) screen in pixels
+
+	void WriteMessage( String message );	// Write a line with a time stamp
+	void dispose();							// Release the display
+
+} // MessageDisplay
@@ -12,6 +12,11 @@
 * timestamp and followed by a newline character. The message window will also auto scroll as messages fill
 * the window.
 *
+* WriteMessage may be called from any thread and never touches Swing itself: lines are kept in a bounded ring
+* buffer and a Swing timer copies the new ones to the text area on the event dispatch thread, at most once per
+* frame. The window keeps the last -Dmessagewindow.lines lines (default 1000), so long running consoles use
+* constant memory.
+*
 * Parameters: SEE THE CONSTRUCTOR BELOW
 *
 * Internal Methods:
@@ -23,16 +28,18 @@
 *	public int TermHeight()
 *	public int TermWidth()
 *	public void WriteMessage( String message )
+*	public void dispose()
 *
 ******************************************************************************************************************/
 package InstrumentationPackage;
 
-import java.util.Calendar;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
 
-public class MessageWindow
+public class MessageWindow implements MessageDisplay
 {
 	private int WindowWidth; 		// Width of the window in pixels
 	private int WindowHeight;		// Height of the window in pixels
@@ -43,6 +50,15 @@ public class MessageWindow
 	private JFrame MessageWindow;   // Message window frame
 	private JTextArea MessageArea; 	// This is the message area widget
 
+	private static final int FRAME_INTERVAL = 100;	// Time between two updates of the text area in milliseconds
+	private static final DateTimeFormatter TimeStampFormat = DateTimeFormatter.ofPattern( "yyyy MM dd::hh:mm:ss:SSS" );
+
+	private String[] Lines;			// Ring buffer of the most recent lines
+	private int NextLine = 0;		// Index in Lines of the next line to write
+	private long LineCount = 0;		// Number of lines written so far
+	private long ShownCount = 0;	// Number of lines copied to the text area so far
+	private Timer UpdateTimer;		// Copies new lines to the text area on the event dispatch thread
+
 	/***************************************************************************
 	* Constructor:: MessageWindow
 	* Purpose: This method sets up the JFrame window with the title specified
@@ -101,6 +117,8 @@ public class MessageWindow
 
 		MessageWindow.setVisible(true);
 
+		StartUpdates();
+
 	} // constructor
 
 	/***************************************************************************
@@ -157,6 +175,8 @@ public class MessageWindow
 
 		MessageWindow.setVisible(true);
 
+		StartUpdates();
+
 	} // constructor
 
 	/***************************************************************************
@@ -285,15 +305,137 @@ public class MessageWindow
 
 	public void WriteMessage( String message )
 	{
-		Calendar TimeStamp = Calendar.getInstance();
-		SimpleDateFormat TimeStampFormat = new SimpleDateFormat("yyyy MM dd::hh:mm:ss:SSS");
+		String TimeString = TimeStampFormat.format( LocalDateTime.now() );
+		String Line = TimeString + ":: " + message + "\n";
+
+		synchronized ( Lines )
+		{
+			Lines[ NextLine ] = Line;
+			NextLine = ( NextLine + 1 ) % Lines.length;
+			LineCount++;
+
+		} // synchronized
+
+	} // WriteMessage
+
+	/***************************************************************************
+	* CONCRETE Class:: dispose
+	* Purpose: This method closes the window.
+	*
+	* Arguments: none
+	*
+	* Returns: none
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	public void dispose()
+	{
+		UpdateTimer.stop();
+		MessageWindow.dispose();
+
+	} // dispose
+
+	/***************************************************************************
+	* CONCRETE Class:: StartUpdates
+	* Purpose: This method creates the line buffer and starts the timer that
+	* copies new lines to the text area once per frame.
+	*
+	* Arguments: none
+	*
+	* Returns: none
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	private void StartUpdates()
+	{
+		Lines = new String[ Math.max( 1, Integer.getInteger( "messagewindow.lines", 1000 ) ) ];
+
+		UpdateTimer = new Timer( FRAME_INTERVAL, e -> ShowNewLines() );
+		UpdateTimer.start();
+
+	} // StartUpdates
+
+	/***************************************************************************
+	* CONCRETE Class:: ShowNewLines
+	* Purpose: This method runs on the event dispatch thread. It appends the
+	* lines written since the last frame to the text area in one batch and
+	* removes the oldest lines beyond the capacity of the ring buffer. If more
+	* lines than the buffer holds were written in one frame, the text area is
+	* replaced by the buffer content.
+	*
+	* Arguments: none
+	*
+	* Returns: none
+	*
+	* Exceptions: none
+	*
+	****************************************************************************/
+
+	private void ShowNewLines()
+	{
+		StringBuilder Batch = new StringBuilder();
+		boolean Overflow;
+
+		synchronized ( Lines )
+		{
+			long NewLines = LineCount - ShownCount;
+
+			if ( NewLines == 0 )
+			{
+				return;
 
-		String TimeString = TimeStampFormat.format(TimeStamp.getTime());
+			} // if
 
-		MessageArea.append( TimeString + ":: " + message + "\n");
+			Overflow = NewLines >= Lines.length;
+			int Count = (int) Math.min( NewLines, Lines.length );
+			int First = Math.floorMod( NextLine - Count, Lines.length );
+
+			for ( int i = 0; i < Count; i++ )
+			{
+				Batch.append( Lines[ ( First + i ) % Lines.length ] );
+
+			} // for
+
+			ShownCount = LineCount;
+
+		} // synchronized
+
+		if ( Overflow )
+		{
+			MessageArea.setText( Batch.toString() );
+
+		} else {
+
+			MessageArea.append( Batch.toString() );
+
+			// The text ends with a newline, so the last line of the area is empty.
+
+			int Excess = MessageArea.getLineCount() - 1 - Lines.length;
+
+			if ( Excess > 0 )
+			{
+				try
+				{
+					MessageArea.replaceRange( "", 0, MessageArea.getLineEndOffset( Excess - 1 ) );
+
+				} // try
+
+				catch ( BadLocationException e )
+				{
+					MessageArea.setText( "" );
+
+				} // catch
+
+			} // if
+
+		} // if
 
 		MessageArea.setCaretPosition( MessageArea.getDocument().getLength() );
 
-	} // WriteMessage
+	} // ShowNewLines
 
 } // MessageWindow
\ No newline at end of file
@@ -0,0 +1,88 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Description:
+ * Lock-free latency histogram with one bucket per millisecond up to ten seconds.
+ * Any number of threads may record concurrently; percentiles are read without stopping them,
+ * so a report taken while recording is approximate.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 10001; // the last bucket collects everything above 10 s
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private AtomicLong max = new AtomicLong();
+
+    /***************************************************************************
+     * Purpose: Record one latency. Negative values (clock skew between hosts)
+     * are recorded as 0.
+     *
+     * Arguments: long - latency in milliseconds
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void record(long millis) {
+        if (millis < 0) millis = 0;
+        counts.incrementAndGet((int) Math.min(millis, BUCKETS - 1));
+        max.accumulateAndGet(millis, Math::max);
+    }
+
+    /***************************************************************************
+     * Purpose: Add all latencies recorded by another histogram to this one
+     *
+     * Arguments: LatencyHistogram - histogram to add
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /***************************************************************************
+     * Purpose: Get a percentile of the recorded latencies
+     *
+     * Arguments: double - percentile between 0 and 1 (e.g. 0.99)
+     *
+     * Returns: long - latency in milliseconds, 0 if nothing was recorded.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public long percentile(double p) {
+        long total = count();
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return i;
+        }
+        return BUCKETS - 1;
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        return total;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,323 @@
+/******************************************************************************************************************
+ * File:LoadGenerator.java
+ *
+ * Description:
+ * This class is a headless load generator used to find out how many participants one MessageManager can serve.
+ * It registers thousands of virtual sensors and controllers, each with its own MessageBus, and drives them from
+ * the shared ParticipantRuntime:
+ *  - virtual sensors send a mix of readings and actuator commands at a configurable rate
+ *  - virtual controllers confirm every command addressed to them, like the real controllers
+ *  - every virtual participant polls its queue at a configurable interval and (optionally) sends heart beats
+ * Every report interval it prints the send and receive throughput, the number of messages drained per poll
+ * (a growing value means queues on the message manager are growing), the end-to-end latency percentiles of
+ * readings and the latency of the SendMessage and poll round trips.
+ *
+ * Parameters: IP addresses of the message managers (on command line) followed by any of these options:
+ *  --sensors=N            number of virtual sensors (default 100)
+ *  --controllers=N        number of virtual controllers (default 10)
+ *  --send-interval=MS     time between two messages of one sensor (default 2500)
+ *  --poll-interval=MS     time between two polls of one participant (default 2500)
+ *  --mix=R:C              relative weights of readings and commands sent by sensors (default 9:1)
+ *  --heartbeat=true|false send heart beats from every participant (default true)
+ *  --duration=S           run time in seconds (default 60)
+ *  --report-interval=S    time between two reports in seconds (default 5)
+ *  --threads=N            threads the ParticipantRuntime keeps ready (default 64)
+ *  --embedded             start an RMI registry and a MessageManager inside this process; no other
+ *                         service is needed and localhost is used as the message manager address
+ *
+ ******************************************************************************************************************/
+
+import MessagePackage.Message;
+import MessagePackage.MessagePool;
+
+import java.rmi.Naming;
+import java.rmi.registry.LocateRegistry;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadGenerator {
+    private static final String LOCAL_HOST = "localhost";
+
+    private int sensorCount = 100;
+    private int controllerCount = 10;
+    private long sendInterval = 2500;
+    private long pollInterval = 2500;
+    private int readingWeight = 9;
+    private int commandWeight = 1;
+    private boolean heartBeat = true;
+    private long duration = 60;
+    private long reportInterval = 5;
+    private int threads = 64;
+    private boolean embedded = false;
+    private List<String> messageManagerIPs = new ArrayList<>();
+
+    private List<VirtualParticipant> participants = new ArrayList<>();
+
+    // counters of the current report interval
+    private AtomicLong sent = new AtomicLong();
+    private AtomicLong sendErrors = new AtomicLong();
+    private AtomicLong received = new AtomicLong();
+    private AtomicLong polls = new AtomicLong();
+    private AtomicLong pollErrors = new AtomicLong();
+    private AtomicLong maxDrained = new AtomicLong();
+    private LatencyHistogram readingLatency = new LatencyHistogram();
+    private LatencyHistogram sendLatency = new LatencyHistogram();
+    private LatencyHistogram pollLatency = new LatencyHistogram();
+
+    // totals of the whole run
+    private long totalSent = 0;
+    private long totalReceived = 0;
+    private LatencyHistogram totalReadingLatency = new LatencyHistogram();
+
+    public static void main(String args[]) {
+        LoadGenerator lg = new LoadGenerator();
+
+        try {
+            lg.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        try {
+            lg.run();
+        } catch (Exception e) {
+            System.out.println("Load generator error: " + e);
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                messageManagerIPs.add(arg);
+                continue;
+            }
+
+            String key = arg.contains("=") ? arg.substring(2, arg.indexOf('=')) : arg.substring(2);
+            String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+            try {
+                switch (key) {
+                    case "sensors": sensorCount = Integer.parseInt(value); break;
+                    case "controllers": controllerCount = Integer.parseInt(value); break;
+                    case "send-interval": sendInterval = Long.parseLong(value); break;
+                    case "poll-interval": pollInterval = Long.parseLong(value); break;
+                    case "heartbeat": heartBeat = Boolean.parseBoolean(value); break;
+                    case "duration": duration = Long.parseLong(value); break;
+                    case "report-interval": reportInterval = Long.parseLong(value); break;
+                    case "threads": threads = Integer.parseInt(value); break;
+                    case "embedded": embedded = true; break;
+                    case "mix":
+                        String[] weights = value.split(":");
+                        readingWeight = Integer.parseInt(weights[0]);
+                        commandWeight = Integer.parseInt(weights[1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option: " + arg);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("invalid option: " + arg);
+            }
+        }
+
+        if (embedded && messageManagerIPs.isEmpty()) messageManagerIPs.add(LOCAL_HOST);
+        if (messageManagerIPs.isEmpty()) throw new IllegalArgumentException("\n\nNeed at least one IP address or --embedded");
+        if (readingWeight + commandWeight <= 0) throw new IllegalArgumentException("invalid option: --mix needs a positive weight");
+    }
+
+    private void run() throws Exception {
+        if (embedded) startEmbeddedMessageManager();
+
+        if (System.getProperty("participant.runtime.threads") == null) {
+            System.setProperty("participant.runtime.threads", String.valueOf(threads));
+        }
+        ParticipantRuntime runtime = ParticipantRuntime.getInstance();
+
+        System.out.println("Registering " + sensorCount + " sensors and " + controllerCount + " controllers on " + messageManagerIPs);
+        String[] IPs = messageManagerIPs.toArray(new String[0]);
+        for (int i = 0; i < sensorCount + controllerCount; i++) {
+            boolean sensor = i < sensorCount;
+            MessageBus mb = MessageBus.newInstance();
+            mb.init(IPs);
+            participants.add(new VirtualParticipant(mb, sensor, i));
+            if ((i + 1) % 100 == 0) System.out.println("   registered " + (i + 1));
+        }
+
+        System.out.println("Starting load: send interval " + sendInterval + " ms, poll interval " + pollInterval
+                + " ms, mix " + readingWeight + ":" + commandWeight + ", heart beats " + heartBeat);
+        participants.forEach(o -> o.start(runtime));
+
+        long start = System.currentTimeMillis();
+        long end = start + duration * 1000;
+        long lastReport = start;
+        printHeader();
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(Math.min(reportInterval * 1000, Math.max(1, end - System.currentTimeMillis())));
+            long now = System.currentTimeMillis();
+            report((now - start) / 1000.0, (now - lastReport) / 1000.0);
+            lastReport = now;
+        }
+
+        participants.forEach(VirtualParticipant::stop);
+        runtime.shutdown(pollInterval + sendInterval);
+        for (VirtualParticipant vp : participants) {
+            try {
+                vp.mb.UnRegister();
+            } catch (Exception e) {
+                // the message manager may be gone already; nothing left to clean up
+            }
+        }
+
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.println();
+        System.out.println("Summary:: participants " + participants.size() + ", run time " + String.format("%.1f", seconds) + " s");
+        System.out.println("   sent " + totalSent + " (" + String.format("%.1f", totalSent / seconds) + "/s), received "
+                + totalReceived + " (" + String.format("%.1f", totalReceived / seconds) + "/s)");
+        System.out.println("   reading latency ms p50 " + totalReadingLatency.percentile(0.50) + ", p90 " + totalReadingLatency.percentile(0.90)
+                + ", p99 " + totalReadingLatency.percentile(0.99) + ", p99.9 " + totalReadingLatency.percentile(0.999)
+                + ", max " + totalReadingLatency.max());
+    }
+
+    private void startEmbeddedMessageManager() throws Exception {
+        if (System.getProperty("messagemanager.quiet") == null) System.setProperty("messagemanager.quiet", "true");
+
+        LocateRegistry.createRegistry(1099);
+        Naming.rebind("MessageManager", new MessageManager());
+        System.out.println("Embedded message manager ready on " + LOCAL_HOST);
+    }
+
+    private void printHeader() {
+        System.out.println(String.format("%8s %10s %10s %8s %10s %10s %8s %8s %8s %8s %9s %9s",
+                "time(s)", "sent/s", "recv/s", "errors", "drain/poll", "drain max",
+                "lat p50", "lat p90", "lat p99", "lat max", "send p99", "poll p99"));
+    }
+
+    private void report(double elapsed, double interval) {
+        long s = sent.getAndSet(0);
+        long r = received.getAndSet(0);
+        long p = polls.getAndSet(0);
+        long errors = sendErrors.getAndSet(0) + pollErrors.getAndSet(0);
+        long drainMax = maxDrained.getAndSet(0);
+        totalSent += s;
+        totalReceived += r;
+        totalReadingLatency.add(readingLatency);
+
+        System.out.println(String.format("%8.1f %10.1f %10.1f %8d %10.1f %10d %8d %8d %8d %8d %9d %9d",
+                elapsed, s / interval, r / interval, errors,
+                p == 0 ? 0.0 : r / (double) p, drainMax,
+                readingLatency.percentile(0.50), readingLatency.percentile(0.90), readingLatency.percentile(0.99), readingLatency.max(),
+                sendLatency.percentile(0.99), pollLatency.percentile(0.99)));
+
+        readingLatency.reset();
+        sendLatency.reset();
+        pollLatency.reset();
+    }
+
+    /**
+     * A simulated sensor or controller with its own MessageBus registration
+     */
+    private class VirtualParticipant {
+        private MessageBus mb;
+        private boolean sensor;
+        private int index;
+        private FaultTolerantParticipant ftParticipant;
+        private List<ScheduledFuture<?>> futures = new ArrayList<>();
+        private List<Message> messageList = new ArrayList<>();  // reused by every poll
+
+        VirtualParticipant(MessageBus mb, boolean sensor, int index) {
+            this.mb = mb;
+            this.sensor = sensor;
+            this.index = index;
+        }
+
+        void start(ParticipantRuntime runtime) {
+            // spread the first runs over one interval so all participants do not fire together
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            futures.add(runtime.scheduleWithFixedDelay(this::poll, random.nextLong(pollInterval), pollInterval));
+            if (sensor) {
+                futures.add(runtime.scheduleAtFixedRate(this::send, random.nextLong(sendInterval), sendInterval));
+            }
+            if (heartBeat) {
+                ParticipantType type = sensor
+                        ? (index % 2 == 0 ? ParticipantType.TEMPERATURE_SENSOR : ParticipantType.HUMIDITY_SENSOR)
+                        : (index % 2 == 0 ? ParticipantType.TEMPERATURE_CONTROLLER : ParticipantType.HUMIDITY_CONTROLLER);
+                ftParticipant = new FaultTolerantParticipant(type, mb);
+                try {
+                    ftParticipant.start();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        void stop() {
+            futures.forEach(o -> o.cancel(false));
+            if (ftParticipant != null) ftParticipant.stop();
+        }
+
+        private void send() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            boolean temperature = index % 2 == 0;
+
+            if (random.nextInt(readingWeight + commandWeight) < readingWeight) {
+                MessagePool pool = MessagePool.getInstance();
+                Message msg = pool.acquire(temperature ? MessageType.TEMPERATURE_READING : MessageType.HUMIDITY_READING);
+                msg.SetFloatValue(random.nextFloat() * 100);
+                send(msg);
+                pool.release(msg);
+            } else if (temperature) {
+                send(random.nextBoolean() ? ControlMessages.HEATER_ON : ControlMessages.HEATER_OFF);
+            } else {
+                send(random.nextBoolean() ? ControlMessages.HUMIDIFIER_ON : ControlMessages.HUMIDIFIER_OFF);
+            }
+        }
+
+        private void send(Message msg) {
+            long begin = System.nanoTime();
+            try {
+                mb.SendMessage(msg);
+                sent.incrementAndGet();
+            } catch (Exception e) {
+                sendErrors.incrementAndGet();
+            }
+            sendLatency.record((System.nanoTime() - begin) / 1000000);
+        }
+
+        private void poll() {
+            int drained;
+            long begin = System.nanoTime();
+            try {
+                drained = mb.drainTo(messageList, Integer.MAX_VALUE);
+            } catch (Exception e) {
+                pollErrors.incrementAndGet();
+                return;
+            }
+            pollLatency.record((System.nanoTime() - begin) / 1000000);
+
+            polls.incrementAndGet();
+            received.addAndGet(drained);
+            maxDrained.accumulateAndGet(drained, Math::max);
+
+            long now = System.currentTimeMillis();
+            for (Message m : messageList) {
+                int id = m.GetMessageId();
+                if (id == MessageType.TEMPERATURE_READING || id == MessageType.HUMIDITY_READING) {
+                    readingLatency.record(now - m.GetTimeStamp());
+                } else if (!sensor && id == MessageType.TEMPERATURE_COMMAND && index % 2 == 0) {
+                    send(confirmation(m, ControlMessages.HEATER_ON_CONFIRMED, ControlMessages.HEATER_OFF_CONFIRMED));
+                } else if (!sensor && id == MessageType.HUMIDITY_COMMAND && index % 2 == 1) {
+                    send(confirmation(m, ControlMessages.HUMIDIFIER_ON_CONFIRMED, ControlMessages.HUMIDIFIER_OFF_CONFIRMED));
+                }
+            }
+            messageList.clear();
+        }
+
+        private Message confirmation(Message command, Message on, Message off) {
+            return command.GetMessage() != null && command.GetMessage().endsWith("1") ? on : off;
+        }
+    }
+}
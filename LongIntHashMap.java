@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * Description:
+ * This class is a hash map from long keys to int values without boxing. It uses open addressing with linear
+ * probing and backward shift deletion, so there are no tombstones and no allocation except when the table grows.
+ * Used for participant ID indexes (see ParticipantRegistry and TimingWheel). This class is not thread safe.
+ */
+public class LongIntHashMap {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /***************************************************************************
+     * Purpose: Create an empty map
+     *
+     * Arguments: int - expected number of entries
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, expectedSize * 2) * 2 - 1);
+        allocate(capacity);
+    }
+
+    /***************************************************************************
+     * Purpose: Get the value of a key
+     *
+     * Arguments:
+     * long - key
+     * int - value returned if the key is absent
+     *
+     * Returns: int.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public int get(long key, int missing) {
+        for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+        }
+        return missing;
+    }
+
+    public boolean containsKey(long key) {
+        for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) return true;
+        }
+        return false;
+    }
+
+    /***************************************************************************
+     * Purpose: Set the value of a key
+     *
+     * Arguments:
+     * long - key
+     * int - value
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void put(long key, int value) {
+        int i = slot(key);
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) grow();
+    }
+
+    /***************************************************************************
+     * Purpose: Remove a key
+     *
+     * Arguments:
+     * long - key
+     * int - value returned if the key is absent
+     *
+     * Returns: int - the removed value.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public int remove(long key, int missing) {
+        int i = slot(key);
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) break;
+        }
+        if (!used[i]) return missing;
+
+        int value = values[i];
+        size--;
+
+        // shift back the following entries of the probe chain into the gap
+        int gap = i;
+        for (int j = (gap + 1) & mask; used[j]; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // move the entry unless its home lies cyclically in (gap, j]
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        used[gap] = false;
+
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import MessagePackage.Membership;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Description:
+ * This class is the membership state kept by the message manager. Participants report their liveness with
+ * a heart beat call instead of a heart beat message, so a heart beat costs one update here rather than one
+ * copy in every message queue. Every update is given the next version number and the members are indexed
+ * by the version of their last update, so a caller that knows version V gets exactly the members changed
+ * after V without scanning the others. Members that unregister leave a tombstone in the same index; only
+ * the most recent MAX_TOMBSTONES are kept, and a caller older than the oldest dropped one gets a snapshot.
+ * Every member has a PhiAccrualDetector that learns its heart beat intervals. The reply to a heart beat is the
+ * interval the member should use next: the longest one that still lets the detector suspect the member within
+ * -Dmembership.detection.time milliseconds (default 3000) of its last heart beat at the phi threshold
+ * -Dmembership.phi.threshold (default 8). Regular members are thus asked for fewer heart beats and irregular
+ * ones for more, rather than everyone beating at a fixed rate with a fixed expiry.
+ * This class is not thread safe; MessageManager calls it from its synchronized methods.
+ */
+public class MembershipTable {
+    private static final int MAX_TOMBSTONES = 1024;
+    private static final double PHI_THRESHOLD = Double.parseDouble(System.getProperty("membership.phi.threshold", "8"));
+    private static final long DETECTION_TIME = Long.getLong("membership.detection.time", 3000);
+    private static final int DETECTOR_WINDOW_SIZE = 32;
+    private static final long MIN_STD_DEVIATION = 50;
+    private static final long MIN_HEART_BEAT_INTERVAL = 500;
+    private static final long FIRST_HEART_BEAT_INTERVAL = 2500;   // what a participant uses before its first reply
+
+    private Map<Long, Member> members;
+    private TreeMap<Long, Member> changes;
+    private ArrayDeque<Member> tombstones;
+    private long version = 0;
+    private long horizon = 0;   // changes at or before this version may have been forgotten
+
+    public MembershipTable() {
+        members = new HashMap<>();
+        changes = new TreeMap<>();
+        tombstones = new ArrayDeque<>();
+    }
+
+    /***************************************************************************
+     * Purpose: Add a registered participant. It becomes visible to queries with
+     * its first heart beat.
+     *
+     * Arguments: long - participant ID
+     *
+     * Returns: None.
+     *
+     ****************************************************************************/
+    public void register(long id) {
+        members.putIfAbsent(id, new Member(id));
+    }
+
+    /***************************************************************************
+     * Purpose: Record a heart beat of a registered participant
+     *
+     * Arguments:
+     * long - participant ID
+     * String - participant type
+     * long - arrival time in milliseconds
+     *
+     * Returns: long - heart beat interval requested from the participant in
+     * milliseconds, 0 if the participant is not registered.
+     *
+     ****************************************************************************/
+    public long heartBeat(long id, String type, long currentTime) {
+        Member m = members.get(id);
+        if (m == null) return 0;
+
+        if (m.type != null) changes.remove(m.version);
+        m.type = type;
+        m.detector.heartBeat(currentTime);
+        m.version = ++version;
+        changes.put(m.version, m);
+
+        // the detector waits its margin beyond the interval; ask for what is left of the detection time
+        long interval = Math.max(MIN_HEART_BEAT_INTERVAL, DETECTION_TIME - m.detector.margin());
+        m.detector.setExpectedInterval(interval);
+        return interval;
+    }
+
+    /***************************************************************************
+     * Purpose: Remove an unregistered participant, leaving a tombstone if
+     * it was visible to queries
+     *
+     * Arguments: long - participant ID
+     *
+     * Returns: None.
+     *
+     ****************************************************************************/
+    public void unregister(long id) {
+        Member m = members.remove(id);
+        if (m == null || m.type == null) return;
+
+        changes.remove(m.version);
+        m.left = true;
+        m.version = ++version;
+        changes.put(m.version, m);
+
+        tombstones.add(m);
+        if (tombstones.size() > MAX_TOMBSTONES) {
+            Member oldest = tombstones.poll();
+            changes.remove(oldest.version);
+            horizon = oldest.version;
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: Get the changes after a version, or a snapshot if they are not
+     * known any more
+     *
+     * Arguments:
+     * long - version known by the caller, 0 for a snapshot
+     * long - current time in milliseconds
+     *
+     * Returns: Membership.
+     *
+     ****************************************************************************/
+    public Membership changesSince(long knownVersion, long currentTime) {
+        boolean snapshot = knownVersion <= 0 || knownVersion < horizon || knownVersion > version;
+        Iterable<Member> updated = snapshot ? changes.values() : changes.tailMap(knownVersion, false).values();
+
+        int liveCount = 0, leftCount = 0;
+        for (Member m : updated) {
+            if (m.left) leftCount++;
+            else liveCount++;
+        }
+        if (snapshot) leftCount = 0;
+
+        long[] ids = new long[liveCount];
+        String[] types = new String[liveCount];
+        long[] silences = new long[liveCount];
+        long[] timeouts = new long[liveCount];
+        long[] leftIds = new long[leftCount];
+        int live = 0, left = 0;
+        for (Member m : updated) {
+            if (!m.left) {
+                ids[live] = m.id;
+                types[live] = m.type;
+                silences[live] = Math.max(0, currentTime - m.detector.getLastHeartBeat());
+                timeouts[live] = m.detector.timeout();
+                live++;
+            } else if (!snapshot) {
+                leftIds[left++] = m.id;
+            }
+        }
+
+        return new Membership(version, snapshot, ids, types, silences, timeouts, leftIds);
+    }
+
+    private static class Member {
+        private long id;
+        private String type;        // null until the first heart beat
+        private PhiAccrualDetector detector;
+        private long version;
+        private boolean left;
+
+        Member(long id) {
+            this.id = id;
+            this.detector = new PhiAccrualDetector(PHI_THRESHOLD, DETECTOR_WINDOW_SIZE, MIN_STD_DEVIATION, FIRST_HEART_BEAT_INTERVAL);
+        }
+    }
+}
@@ -1,34 +1,150 @@
+import MessagePackage.Membership;
 import MessagePackage.Message;
 import MessagePackage.MessageManagerInterface;
 import MessagePackage.MessageQueue;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
  * Description:
  * This class is a fault tolerance abstraction of MessageManager.
  * It provides reliable message channel services for its users along with the almost same APIs as MessageManager.
+ * Every send goes to all living channels, but only the main channel is polled: a standby channel takes over
+ * when it fails, and a failed channel is probed until it can be re-admitted. Sends no channel can take are
+ * spooled until then. The -Dmessagebus.* properties that tune this are described where they are used.
  * Notice that in a single process there is only one instance of MessageBus
  */
 public class MessageBus {
     private static MessageBus instance = null;
-    private static final int MAX_CACHE_MESSAGE_COUNT = 1000;
     private static final String LOCAL_HOST = "localhost";
+    private static final long STANDBY_TRUNCATE_INTERVAL = Long.getLong("messagebus.standby.truncate.interval", 5000);
+    private static final long RECOVERY_INITIAL_BACKOFF = Long.getLong("messagebus.recovery.backoff.initial", 1000);
+    private static final long RECOVERY_MAX_BACKOFF = Long.getLong("messagebus.recovery.backoff.max", 30000);
+    private static final long RECOVERY_RESTORE_DELAY = Long.getLong("messagebus.recovery.restore.delay", 10000);
+    private static final double RECOVERY_JITTER = 0.1;
+    private static final boolean PREFETCH = Boolean.getBoolean("messagebus.prefetch");
+    private static final long PREFETCH_INTERVAL = Long.getLong("messagebus.prefetch.interval", 100);
+    private static final int PREFETCH_BUFFER_SIZE = Integer.getInteger("messagebus.prefetch.buffer", 1024);
+    private static final boolean ASYNC_SEND = Boolean.getBoolean("messagebus.send.async");
+    private static final int OUTBOX_SIZE = Integer.getInteger("messagebus.outbox.size", 4096);
+    private static final int OUTBOX_BATCH_SIZE = Integer.getInteger("messagebus.outbox.batch", 64);
+    private static final long OUTBOX_FLUSH_INTERVAL = Long.getLong("messagebus.outbox.flush.interval", 10);
+    private static final long UNREGISTER_FLUSH_TIMEOUT = 5000;
+    private static final String SPOOL_DIRECTORY = System.getProperty("messagebus.spool.dir", System.getProperty("java.io.tmpdir"));
+    private static final int SPOOL_SIZE = Integer.getInteger("messagebus.spool.size", 8 * 1024 * 1024);
+    private static final int SPOOL_BATCH_SIZE = Integer.getInteger("messagebus.spool.batch", 512);
+    private static final long SPOOL_REPLAY_JITTER = Long.getLong("messagebus.spool.replay.jitter", 1000);
+    private static final long SPOOL_MAX_AGE = Long.getLong("messagebus.spool.max.age", 60000);
+    private static final boolean HEDGE = Boolean.getBoolean("messagebus.hedge");
+    private static final double HEDGE_PERCENTILE = Double.parseDouble(System.getProperty("messagebus.hedge.percentile", "95"));
+    private static final long HEDGE_MIN_DELAY = Long.getLong("messagebus.hedge.min.delay", 2);
+    private static final int HEDGE_SAMPLES = 64;
+    private static final String PLACEMENT = System.getProperty("messagebus.placement", "first");
+    private static final String PLACEMENT_FIRST = "first";
+    private static final String PLACEMENT_HASH = "hash";
+    private static final String PLACEMENT_LEAST_LOADED = "least-loaded";
+    private static final long REBALANCE_JITTER = Long.getLong("messagebus.placement.rebalance.jitter", 5000);
+    private static final String SEND_QUORUM = System.getProperty("messagebus.send.quorum", "1");
+    private static final long RMI_RESPONSE_TIMEOUT = Long.getLong("messagebus.rmi.timeout", 10000);
+    // a standby that takes over replays up to two truncation intervals, and the failure of the main channel may
+    // only be noticed after an RMI timeout: the copies of a send are read at most that far apart, plus a late poll
+    private static final long DUPLICATE_RETENTION = 3 * STANDBY_TRUNCATE_INTERVAL + RMI_RESPONSE_TIMEOUT;
+    private static final int SEND_THREADS = Integer.getInteger("messagebus.send.threads", 4);   // per message manager
+    private static final int POLL_THREADS = Integer.getInteger("messagebus.poll.threads", 4);   // per message manager
+    // Each message manager has a send and a poll pool of its own, shared by every bus of the process, so a
+    // message manager that hangs only holds up the threads that wait for it, never the calls to the others.
+    // The outbox flusher, the spool forwarding and the placement run on the background pool.
+    private static final Map<String, EventDispatcher> SENDERS = new ConcurrentHashMap<>();     // by message manager IP
+    private static final Map<String, EventDispatcher> POLLERS = new ConcurrentHashMap<>();     // by message manager IP
+    private static final EventDispatcher BACKGROUND = new EventDispatcher("message-bus-background",
+            Integer.getInteger("messagebus.background.threads", 2));
+    private static final EventDispatcher SUBSCRIBERS = new EventDispatcher("message-bus-subscriber",
+            Integer.getInteger("messagebus.subscriber.threads", 2));
+
+    static {
+        // RMI waits for an answer forever by default, and a minute for the handshake of a new connection:
+        // a hung message manager would hold its callers for good. A call is given up, and its channel failed,
+        // after -Dmessagebus.rmi.timeout milliseconds instead, unless the RMI timeouts were set. RMI reads them
+        // at its first remote call, so they must be given on the command line when RMI is used before the bus.
+        for (String timeout : new String[]{"sun.rmi.transport.tcp.responseTimeout", "sun.rmi.transport.tcp.handshakeTimeout"}) {
+            if (System.getProperty(timeout) == null) System.setProperty(timeout, Long.toString(RMI_RESPONSE_TIMEOUT));
+        }
+    }
 
     private List<String> messageManagerIPs;
     private List<MessageManagerInterface> mmiList;
     private List<BiConsumer<String, Boolean>> messageManagerFailureCallbacks;
+    private List<BiConsumer<String, Boolean>> messageManagerRecoveryCallbacks;
     private int mainChannelIndex = 0;
+    private String placement = PLACEMENT;
+    private int[] preference;       // channel indexes in the order the placement prefers them as the main channel
+    private final Object placementLane = new Object();  // key of the lane rebalancing runs on
     private boolean[] livingChannels;
-    private List<List<Message>> cacheMessageList;
+    private long[] membershipVersions;
+    private Object[] sendLanes;     // per channel: key of the lane its sends are queued on
+    private EventDispatcher[] senders;  // per channel: send pool of its message manager
+    private Object[] probeLanes;    // per channel: key of the lane its recovery probes run on
+    private long[] standbyOffsets;  // per channel: sequence number its messages are read from if it takes over
+    private long[] standbyTails;    // per channel: sequence number its queue had reached at the last truncation
+    private long lastTruncation = 0;
+    private int drainedChannelIndex = 0;    // channel polled last, the main channel unless it just failed
+    private long[] recoveryBackoffs;    // per channel: delay before the next probe while it is down
+    private long[] readmissionTimes;    // per channel: time it was last re-admitted
+    private boolean unregistered = false;   // no more probes once the caller left
+    private final Object fetchLock = new Object();  // one poll of the main channel at a time
+    private ArrayDeque<Message> prefetched;         // guards itself and the demand of the subscriptions
+    private List<BusSubscription> subscriptions;
+    private volatile ScheduledFuture<?> prefetchTask;   // null until prefetching starts
+    private volatile boolean asyncSend = ASYNC_SEND;
+    private ArrayDeque<PendingMessage> outbox;      // guards itself and flushPending
+    private boolean flushPending = false;           // a flush of the outbox is scheduled or running
+    private final Object outboxLane = new Object(); // key of the lane the flusher runs on
+    private CompletableFuture<Void> lastBatch = CompletableFuture.completedFuture(null);   // flusher lane only
+    private volatile MessageSpool spool;            // null until the first total outage
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
+    private final Object spoolLane = new Object();  // key of the lane the spool is forwarded on
+    private final long origin;      // random id of this bus, stamped on its sends with their number
+    private final AtomicLong sendSequence = new AtomicLong();
+    private DuplicateFilter duplicates;             // guarded by prefetched; null with a single channel
+    private Object[] pollLanes;     // per channel: key of the lane hedged polls are made on
+    private EventDispatcher[] pollers;  // per channel: poll pool of its message manager
+    private PollLatency[] pollLatencies;
+    private List<CompletableFuture<Boolean>> pendingPolls;  // per channel: last poll made on its lane, fetchLock only
+    private MessageTracer tracer;
 
     private MessageBus() {
         messageManagerIPs = new ArrayList<>();
-        mmiList = new ArrayList<>();
-        messageManagerFailureCallbacks = new ArrayList<>();
-        cacheMessageList = new ArrayList<>();
+        mmiList = new CopyOnWriteArrayList<>();    // channels are replaced when they re-register
+        messageManagerFailureCallbacks = new CopyOnWriteArrayList<>();    // called outside the bus monitor
+        messageManagerRecoveryCallbacks = new CopyOnWriteArrayList<>();
+        prefetched = new ArrayDeque<>();
+        outbox = new ArrayDeque<>();
+        subscriptions = new CopyOnWriteArrayList<>();
+        tracer = MessageTracer.getInstance();
+
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        origin = id;
     }
 
     /***************************************************************************
@@ -47,6 +163,20 @@ public class MessageBus {
         return instance;
     }
 
+    /***************************************************************************
+     * Purpose: Create a bus that is independent of the process singleton.
+     * Tools that host many simulated participants in one process (e.g. LoadGenerator)
+     * use one bus per simulated participant, each with its own registrations.
+     *
+     * Arguments: None.
+     *
+     * Returns: MessageBus.
+     *
+     ****************************************************************************/
+    public static MessageBus newInstance() {
+        return new MessageBus();
+    }
+
     /***************************************************************************
      * Purpose:
      * Configurate all IP addresses of Message Managers in the network
@@ -70,45 +200,445 @@ public class MessageBus {
             if (LOCAL_HOST.equals(s)) continue;
             if (!validateIPAddress(s)) throw new Exception("invalid IP address: " + s);
         }
+        checkPlacement(placement, Arrays.asList(messageManagerIPs));
 
         livingChannels = new boolean[messageManagerIPs.length];
         Arrays.fill(livingChannels, true);
+        membershipVersions = new long[messageManagerIPs.length];
+        sendLanes = new Object[messageManagerIPs.length];
+        for (int i = 0; i < sendLanes.length; i++) sendLanes[i] = new Object();
+        senders = new EventDispatcher[messageManagerIPs.length];
+        for (int i = 0; i < senders.length; i++) senders[i] = dispatcher(SENDERS, "message-bus-send-", messageManagerIPs[i], SEND_THREADS);
+        probeLanes = new Object[messageManagerIPs.length];
+        for (int i = 0; i < probeLanes.length; i++) probeLanes[i] = new Object();
+        pollLanes = new Object[messageManagerIPs.length];
+        for (int i = 0; i < pollLanes.length; i++) pollLanes[i] = new Object();
+        pollers = new EventDispatcher[messageManagerIPs.length];
+        for (int i = 0; i < pollers.length; i++) pollers[i] = dispatcher(POLLERS, "message-bus-poll-", messageManagerIPs[i], POLL_THREADS);
+        pollLatencies = new PollLatency[messageManagerIPs.length];
+        for (int i = 0; i < pollLatencies.length; i++) pollLatencies[i] = new PollLatency();
+        pendingPolls = new ArrayList<>(Collections.nCopies(messageManagerIPs.length, null));
+        standbyOffsets = new long[messageManagerIPs.length];
+        standbyTails = new long[messageManagerIPs.length];
+        recoveryBackoffs = new long[messageManagerIPs.length];
+        Arrays.fill(recoveryBackoffs, RECOVERY_INITIAL_BACKOFF);
+        readmissionTimes = new long[messageManagerIPs.length];
 
         for (String s : messageManagerIPs) {
-            MessageManagerInterface mmi;
-            if (LOCAL_HOST.equals(s)) {
-                mmi = new MessageManagerInterface();
-            } else {
-                mmi = new MessageManagerInterface(s);
-            }
-            this.mmiList.add(mmi);
+            this.mmiList.add(connect(s));
             this.messageManagerIPs.add(s);
-            this.cacheMessageList.add(new LinkedList<>());
         }
+
+        preference = rankChannels();
+        int main = PLACEMENT_LEAST_LOADED.equals(placement) ? leastLoaded(readerCounts()) : preference[0];
+        mainChannelIndex = main < 0 ? preference[0] : main;
+        drainedChannelIndex = mainChannelIndex;
+
+        // takeovers and hedged polls read sends twice; the filter must have seen the first copies
+        if (messageManagerIPs.length > 1) {
+            synchronized (prefetched) {
+                duplicates = new DuplicateFilter(DUPLICATE_RETENTION);
+            }
+        }
+
+        if (PREFETCH) startPrefetch();
+        scheduleReplay(replayJitter());     // what a named spool kept from a previous process
     }
 
     /***************************************************************************
      * CONCRETE METHOD:: SendMessage
      * Purpose: This method sends an message to the message manager.
+     * The message is sent to all living channels in parallel, and the call returns
+     * as soon as -Dmessagebus.send.quorum channels acknowledged it: 1 (default),
+     * majority or all. The sends to one channel stay in the order of the calls; a
+     * channel that fails after the quorum was reached is handled in the background.
+     * The sender ID of each channel is passed alongside the message and stamped by
+     * the message manager, so shared constant messages (see ControlMessages) are never
+     * mutated. The message may be released to a MessagePool once this method returns:
+     * when channels may still be sending after that, they all send one copy.
      *
      * Arguments: Message object.
      *
      * Returns: None.
      *
-     * Exceptions: Participant not registered, Send message exception
+     * Exceptions: Participant not registered, Send message exception, InterruptedException
      *
      ****************************************************************************/
-    synchronized public void SendMessage(Message evt) throws Exception {
+    public void SendMessage(Message evt) throws Exception {
         if (defender()) return;
 
-        for (int i = mainChannelIndex; i < mmiList.size(); i++) {
-            if (!livingChannels[i]) continue;
+        if (asyncSend) {
+            enqueue(evt, null);
+            return;
+        }
+
+        tracer.sent(evt);
+
+        int[] channels = livingChannelIndexes();
+        if (channels.length == 0 || isSpooling()) {
+            if (!spoolMessages(evt)) throw new Exception("message bus spool full: message lost");
+            return;
+        }
+
+        SendAcknowledgement ack = new SendAcknowledgement(quorum(channels.length), channels.length);
+        Message m = (ack.needed < channels.length && !evt.IsFrozen()) ? evt.Copy() : evt;   // lanes may outlive the call
+        long sequence = sendSequence.incrementAndGet();
+
+        for (int channel : channels) {
+            senders[channel].submit(sendLanes[channel], () -> {
+                boolean sent = false;
+                try {
+                    mmiList.get(channel).SendMessage(m, origin, sequence);
+                    sent = true;
+                } catch (Exception e) {
+                    failSafe(channel);
+                } finally {
+                    ack.done(sent);
+                }
+            });
+        }
+
+        ack.await();
+        if (ack.noneAcknowledged() && !spoolMessages(evt)) throw new Exception("message bus spool full: message lost");
+    }
+
+    /***************************************************************************
+     * Purpose: This method queues a message in the outbox and returns at once,
+     * whatever the send mode of the bus. The message may be released to a
+     * MessagePool once this method returns.
+     *
+     * Arguments: Message object.
+     *
+     * Returns: CompletableFuture<Void> - completed when the batch holding the message
+     * was acknowledged by the send quorum, exceptionally if no quorum took it.
+     *
+     * Exceptions: Participant not registered, Outbox full
+     *
+     ****************************************************************************/
+    public CompletableFuture<Void> SendMessageAsync(Message evt) throws Exception {
+        if (defender()) throw new Exception("no message channel");
+
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        enqueue(evt, sent);
+        return sent;
+    }
+
+    /***************************************************************************
+     * Purpose: This method sends what is in the outbox now instead of waiting for
+     * the flush interval.
+     *
+     * Arguments: None.
+     *
+     * Returns: CompletableFuture<Void> - completed when the last batch sent so far
+     * was acknowledged by the send quorum. Every channel sends in queue order, so
+     * the earlier batches were handled by then.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        BACKGROUND.submit(outboxLane, () -> {
+            flushOutbox();
+            lastBatch.whenComplete((v, e) -> {
+                if (e == null) flushed.complete(null);
+                else flushed.completeExceptionally(e);
+            });
+        });
+        return flushed;
+    }
+
+    /***************************************************************************
+     * Purpose: This method switches the bus between synchronous sends and sends
+     * through the outbox; -Dmessagebus.send.async=true sets the default. An
+     * asynchronous SendMessage only copies the message into an outbox of
+     * -Dmessagebus.outbox.size messages (default 4096) and returns, or fails if
+     * the outbox is full rather than blocking the caller. The outbox is sent as one
+     * batch call per channel once -Dmessagebus.outbox.batch messages (default 64)
+     * are waiting, or -Dmessagebus.outbox.flush.interval milliseconds (default 10)
+     * after the first one was queued.
+     *
+     * Arguments: boolean - true for asynchronous sends.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void setAsyncSend(boolean async) {
+        asyncSend = async;
+    }
+
+    private void enqueue(Message evt, CompletableFuture<Void> sent) throws Exception {
+        Message m = evt.IsFrozen() ? evt : evt.Copy();
+        tracer.sent(m);
+
+        int queued;
+        boolean schedule = false;
+        synchronized (outbox) {
+            if (outbox.size() >= OUTBOX_SIZE) throw new Exception("message bus outbox full: " + OUTBOX_SIZE + " messages");
+
+            outbox.add(new PendingMessage(m, sent));
+            queued = outbox.size();
+            if (!flushPending) {
+                flushPending = true;
+                schedule = true;
+            }
+        }
+
+        if (queued == OUTBOX_BATCH_SIZE) {
+            BACKGROUND.submit(outboxLane, this::flushOutbox);
+        } else if (schedule) {
+            ParticipantRuntime.getInstance().schedule(() -> BACKGROUND.submit(outboxLane, this::flushOutbox), OUTBOX_FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * Send the outbox in batches, each to every living channel on the channel's send lane. Runs on the
+     * outbox lane, so batches leave in queue order and the flusher never waits for the network.
+     */
+    private void flushOutbox() {
+        while (true) {
+            PendingMessage[] pending;
+            synchronized (outbox) {
+                int count = Math.min(OUTBOX_BATCH_SIZE, outbox.size());
+                if (count == 0) {
+                    flushPending = false;
+                    return;
+                }
+
+                pending = new PendingMessage[count];
+                for (int i = 0; i < count; i++) pending[i] = outbox.poll();
+            }
+
+            Message[] batch = new Message[pending.length];
+            for (int i = 0; i < batch.length; i++) batch[i] = pending[i].message;
+
+            lastBatch = sendBatch(batch);
+            lastBatch.whenComplete((v, e) -> {
+                for (PendingMessage p : pending) {
+                    if (p.sent == null) continue;
+                    if (e == null) p.sent.complete(null);
+                    else p.sent.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Send a batch to every living channel, or store it in the spool if none is alive or the spool is not
+     * forwarded yet. The returned future also completes normally when the batch was stored, and exceptionally
+     * if the spool could not store all of it.
+     */
+    private CompletableFuture<Void> sendBatch(Message[] batch) {
+        int[] channels = livingChannelIndexes();
+        if (channels.length == 0 || isSpooling()) {
+            if (spoolMessages(batch)) return CompletableFuture.completedFuture(null);
+            return CompletableFuture.failedFuture(new Exception("message bus spool full: messages lost"));
+        }
+
+        SendAcknowledgement ack = sendToChannels(batch, channels);
+        return ack.result.handle((v, e) -> {
+            if (e == null) return null;
+            if (!ack.noneAcknowledged()) throw new CompletionException(e);
+            if (!spoolMessages(batch)) throw new CompletionException(new Exception("message bus spool full: messages lost"));
+            return null;
+        });
+    }
+
+    private SendAcknowledgement sendToChannels(Message[] batch, int[] channels) {
+        SendAcknowledgement ack = new SendAcknowledgement(quorum(channels.length), channels.length);
+        long firstSequence = sendSequence.getAndAdd(batch.length) + 1;
+        for (int channel : channels) {
+            senders[channel].submit(sendLanes[channel], () -> {
+                boolean sent = false;
+                try {
+                    mmiList.get(channel).SendMessages(batch, origin, firstSequence);
+                    sent = true;
+                } catch (Exception e) {
+                    failSafe(channel);
+                } finally {
+                    ack.done(sent);
+                }
+            });
+        }
+        return ack;
+    }
+
+    private boolean isSpooling() {
+        MessageSpool s = spool;
+        return s != null && !s.isEmpty();
+    }
+
+    /**
+     * Store messages no channel took, because every channel is down, in a memory-mapped file of
+     * -Dmessagebus.spool.size bytes (default 8 MB) in -Dmessagebus.spool.dir (default the temporary directory),
+     * created on the first outage. Later sends are stored behind them, so order is kept, until the spool is
+     * forwarded in batches of -Dmessagebus.spool.batch messages (default 512) once a channel recovers.
+     * False if a message was lost: the spool file cannot be created, the message alone is larger than it or
+     * the bus was unregistered.
+     */
+    private boolean spoolMessages(Message... messages) {
+        MessageSpool s = openSpool();
+        if (s == null) return false;
+
+        boolean stored = true;
+        for (Message m : messages) stored &= s.append(m);
+        scheduleReplay(0);      // a channel may have come back while the messages were stored
+        return stored;
+    }
+
+    /***************************************************************************
+     * Purpose: This method names the spool of the bus, so that it outlives the
+     * process: the bus claims a spool file of that name, and messages a previous
+     * process of the name left in it are forwarded once the bus is initialized.
+     * Control messages and messages spooled more than -Dmessagebus.spool.max.age
+     * milliseconds (default 60000) before are dropped instead, so a restart does
+     * not act on old commands nor pass old readings off as new. Two participants of a type on one host hold a file each. The spool of a bus
+     * that was not named is a temporary file deleted when the process exits. It
+     * has no effect once the bus has spooled.
+     *
+     * Arguments: String - spool name, e.g. the participant type
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized void setSpoolName(String name) {
+        if (spool != null) return;
+
+        try {
+            spool = MessageSpool.claim(new File(SPOOL_DIRECTORY), "messagebus-" + name, SPOOL_SIZE, SPOOL_MAX_AGE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (livingChannels != null) scheduleReplay(replayJitter());
+    }
+
+    private synchronized MessageSpool openSpool() {
+        if (spool == null && !unregistered) {
+            try {
+                // not named: the spool lives as long as the process
+                File file = File.createTempFile("messagebus-spool-", ".dat", new File(SPOOL_DIRECTORY));
+                file.deleteOnExit();
+                spool = new MessageSpool(file, SPOOL_SIZE);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return spool;
+    }
+
+    /**
+     * Release the spool file; a named spool keeps what it could not forward yet for the next process
+     */
+    private synchronized void closeSpool() {
+        if (spool != null) spool.close();
+    }
+
+    /**
+     * Forward the spool after a delay, unless it is empty, already being forwarded or no channel is alive.
+     * After a recovery the delay is a random one of up to -Dmessagebus.spool.replay.jitter milliseconds (default
+     * 1000), so participants that see the same message manager come back do not all replay at the same moment.
+     */
+    private void scheduleReplay(long delay) {
+        if (!isSpooling() || livingChannelIndexes().length == 0 || !replaying.compareAndSet(false, true)) return;
+
+        ParticipantRuntime.getInstance().schedule(() -> BACKGROUND.submit(spoolLane, this::replaySpool), delay);
+    }
+
+    private static long replayJitter() {
+        return (long) (ThreadLocalRandom.current().nextDouble() * SPOOL_REPLAY_JITTER);
+    }
+
+    /**
+     * Forward the oldest batch of the spool and, once the quorum took it, drop it and go on with the next.
+     * If the channels fail again the spool is kept for the next recovery.
+     */
+    private void replaySpool() {
+        int[] channels = livingChannelIndexes();
+        List<Message> batch = new ArrayList<>();
+        long last = channels.length == 0 ? 0 : spool.peek(SPOOL_BATCH_SIZE, batch);
+        if (last == 0) {
+            replaying.set(false);
+            if (channels.length > 0) scheduleReplay(0);    // stored while this replay was finishing
+            return;
+        }
+
+        SendAcknowledgement ack = sendToChannels(batch.toArray(new Message[0]), channels);
+        ack.result.whenComplete((v, e) -> {
+            if (e == null) {
+                spool.removeThrough(last);
+                BACKGROUND.submit(spoolLane, this::replaySpool);
+            } else {
+                replaying.set(false);
+            }
+        });
+    }
+
+    /***************************************************************************
+     * CONCRETE METHOD:: HeartBeat
+     * Purpose: This method reports to every living message channel that the caller
+     * is alive. Heart beats are kept as membership state by the message managers and
+     * never reach the message queues of other participants.
+     *
+     * Arguments: String - participant type of the caller.
+     *
+     * A message manager that answers 0 no longer knows the participant: it is
+     * registered with again before the heart beat returns. The remote calls are
+     * made without holding the bus, so a hung message manager delays the heart
+     * beat only, not the sends and polls of the other channels.
+     *
+     * Returns: long - the shortest heart beat interval asked for by the message
+     * managers in milliseconds, 0 if none of them answered.
+     *
+     * Exceptions: Participant not registered
+     *
+     ****************************************************************************/
+    public long HeartBeat(String type) throws Exception {
+        if (defender()) return 0;
+
+        long interval = 0;
+        for (int i : livingChannelIndexes()) {
             try {
-                mmiList.get(i).SendMessage(evt);
+                MessageManagerInterface mmi = mmiList.get(i);
+                long requested = mmi.HeartBeat(type);
+                if (requested == 0) requested = reregister(i, mmi, type);
+                if (requested > 0 && (interval == 0 || requested < interval)) interval = requested;
             } catch (Exception e) {
-                failSafe();
+                failSafe(i);
             }
         }
+        return interval;
+    }
+
+    /***************************************************************************
+     * Purpose: This method gets the membership changes of the main message channel
+     * since the previous call. The first call after a switch of the main channel
+     * returns a snapshot of its members.
+     *
+     * Arguments: None.
+     *
+     * Returns: Membership, or null if the main channel did not answer.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public Membership getMembership() {
+        if (defender()) return null;
+
+        int channel = mainChannelIndex;
+        if (!livingChannels[channel]) return null;    // every channel is down, waiting for a probe
+        try {
+            Membership ms = mmiList.get(channel).GetMembership(membershipVersions[channel]);
+            membershipVersions[channel] = ms.getVersion();
+            return ms;
+        } catch (Exception e) {
+            failSafe(channel);
+            return null;
+        }
     }
 
     /***************************************************************************
@@ -147,7 +677,18 @@ public class MessageBus {
     public void UnRegister() throws Exception {
         if (defender()) return;
 
-        for (int i = mainChannelIndex; i < mmiList.size(); i++) {
+        // whatever is still in the outbox leaves before the registrations
+        try {
+            flush().get(UNREGISTER_FLUSH_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // the channels that failed were handed to failSafe
+        }
+
+        unregistered = true;
+        stopPrefetch();
+        closeSpool();
+        for (int i = 0; i < mmiList.size(); i++) {
+            if (!livingChannels[i]) continue;
             mmiList.get(i).UnRegister();
         }
     }
@@ -196,8 +737,8 @@ public class MessageBus {
 
     /***************************************************************************
      * Purpose: This method allows participants to get current available messages in a List
-     * This method also pull messages from standby message channels and cache certain amount
-     * of messages for each message channel.
+     * While prefetching, the messages buffered so far are returned without a remote call.
+     * Every call allocates a new list; participants that poll often use drainTo instead.
      *
      * Arguments: None.
      *
@@ -209,54 +750,412 @@ public class MessageBus {
     public List<Message> getAvailableMessages() throws Exception {
         if(defender()) return new ArrayList<>();
 
-        List<Message> result = new LinkedList<>();
+        if (prefetchTask == null) fetch();
 
-        MessageQueue mq = null;
-        try {
-            mq = mmiList.get(mainChannelIndex).GetMessageQueue();
-        }catch (Exception e) {
-            failSafe();
+        synchronized (prefetched) {
+            List<Message> result = new ArrayList<>(prefetched);
+            prefetched.clear();
+            return result;
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: This method moves at most max available messages, oldest first, to
+     * the end of a collection the caller keeps, so that polling allocates nothing.
+     * Messages beyond max are kept for the next call, which then makes no remote
+     * call; while prefetching, no call does.
+     *
+     * Arguments:
+     * Collection<? super Message> - collection the messages are added to
+     * int - maximum number of messages to add
+     *
+     * Returns: int - number of messages added.
+     *
+     * Exceptions: Participant not registered, Get messages exception
+     *
+     ****************************************************************************/
+    public int drainTo(Collection<? super Message> target, int max) throws Exception {
+        if (defender()) return 0;
+
+        if (prefetchTask == null && isBufferEmpty()) fetch();
+
+        synchronized (prefetched) {
+            int count = Math.min(max, prefetched.size());
+            for (int i = 0; i < count; i++) target.add(prefetched.poll());
+            return count;
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: This method is drainTo for a message array the caller reuses on
+     * every poll. The array is filled from index 0; the slots after the returned
+     * count keep whatever they held.
+     *
+     * Arguments: Message[] - buffer, its length is the maximum number of messages
+     *
+     * Returns: int - number of messages written to the buffer.
+     *
+     * Exceptions: Participant not registered, Get messages exception
+     *
+     ****************************************************************************/
+    public int drainTo(Message[] buffer) throws Exception {
+        if (defender()) return 0;
+
+        if (prefetchTask == null && isBufferEmpty()) fetch();
+
+        synchronized (prefetched) {
+            int count = Math.min(buffer.length, prefetched.size());
+            for (int i = 0; i < count; i++) buffer[i] = prefetched.poll();
+            return count;
         }
+    }
 
-        if (cacheMessageList.get(mainChannelIndex).size() != 0) {
-            result.addAll(cacheMessageList.get(mainChannelIndex));
-            cacheMessageList.get(mainChannelIndex).clear();
+    private boolean isBufferEmpty() {
+        synchronized (prefetched) {
+            return prefetched.isEmpty();
         }
+    }
+
+    /***************************************************************************
+     * Purpose: This method makes the bus poll the main channel in the background
+     * and buffer the messages, so that getAvailableMessages returns at once and
+     * subscribers are called as messages arrive. Calling it again has no effect;
+     * -Dmessagebus.prefetch=true calls it at init. The main channel is polled every
+     * -Dmessagebus.prefetch.interval milliseconds (default 100) while fewer than
+     * -Dmessagebus.prefetch.buffer messages (default 1024) are buffered. A batch is
+     * only taken from the buffer when every subscriber has requested it, so a slow
+     * subscriber fills the buffer and stops the polling rather than being flooded.
+     * Every message is consumed once, either by a pull or by the subscribers.
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public synchronized void startPrefetch() {
+        if (prefetchTask != null) return;
+
+        prefetchTask = ParticipantRuntime.getInstance().scheduleWithFixedDelay(this::prefetch, 0, PREFETCH_INTERVAL);
+    }
 
-        if(mq != null) {
-            int size = mq.GetSize();
-            for (int i = 0; i < size; i++) {
-                result.add(mq.GetMessage());
+    /***************************************************************************
+     * Purpose: This method calls a consumer with every message received from now
+     * on, in arrival order, and starts prefetching.
+     *
+     * Arguments: Consumer<Message> - callback.
+     *
+     * Returns: Flow.Subscription - cancel it to stop the callbacks.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public Flow.Subscription subscribe(Consumer<Message> consumer) {
+        return subscribe(new Flow.Subscriber<Message>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Message item) {
+                try {
+                    consumer.accept(item);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
             }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throwable.printStackTrace();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    /***************************************************************************
+     * Purpose: This method gets a view of the bus as a Flow.Publisher. Its
+     * subscribers receive the messages they requested, in arrival order, and
+     * are completed when the caller unregisters.
+     *
+     * Arguments: None.
+     *
+     * Returns: Flow.Publisher<Message>.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public Flow.Publisher<Message> publisher() {
+        return this::subscribe;
+    }
+
+    private Flow.Subscription subscribe(Flow.Subscriber<? super Message> subscriber) {
+        BusSubscription subscription = new BusSubscription(subscriber);
+        subscriptions.add(subscription);
+        SUBSCRIBERS.submit(subscription, () -> subscriber.onSubscribe(subscription));
+        startPrefetch();
+        return subscription;
+    }
+
+    private synchronized void stopPrefetch() {
+        if (prefetchTask == null) return;
+
+        prefetchTask.cancel(false);
+        for (BusSubscription subscription : subscriptions) {
+            subscription.cancel();
+            SUBSCRIBERS.submit(subscription, subscription.subscriber::onComplete);
+        }
+    }
+
+    /**
+     * One round of the prefetch task: poll unless the buffer is full, then hand out what was requested
+     */
+    private void prefetch() {
+        if (defender()) return;
+
+        boolean full;
+        synchronized (prefetched) {
+            full = prefetched.size() >= PREFETCH_BUFFER_SIZE;
         }
 
-        pullStandByMessages();
+        if (!full) {
+            try {
+                fetch();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
 
-        return result;
+        dispatch();
     }
 
-    private void pullStandByMessages() {
+    /**
+     * Take as many buffered messages as every subscriber requested and queue them on the subscribers' lanes
+     */
+    private void dispatch() {
+        if (subscriptions.isEmpty()) return;
 
-        for (int i = mainChannelIndex + 1; i < mmiList.size(); i++) {
-            if (!livingChannels[i]) continue;
+        synchronized (prefetched) {
+            long demand = Long.MAX_VALUE;
+            for (BusSubscription subscription : subscriptions) demand = Math.min(demand, subscription.demand);
+
+            int count = (int) Math.min(demand, prefetched.size());
+            if (count == 0) return;
+
+            Message[] batch = new Message[count];
+            for (int i = 0; i < count; i++) batch[i] = prefetched.poll();
+            for (BusSubscription subscription : subscriptions) subscription.deliver(batch);
+        }
+    }
+
+    /**
+     * Poll the main channel and append its messages to the buffer. The first call after a standby channel
+     * took over reads it from its offset; the others only poll the main channel, hedged if enabled, and from
+     * time to time truncate the standby channels.
+     */
+    private void fetch() throws Exception {
+        synchronized (fetchLock) {
+            int channel = mainChannelIndex;
+            if (!livingChannels[channel]) return;    // every channel is down, waiting for a probe
+
+            int standby = HEDGE ? standbyOf(channel) : -1;
+            try {
+                if (channel != drainedChannelIndex) {
+                    // the previous main channel failed: read what it may not have delivered
+                    deliver(mmiList.get(channel).GetMessageQueue(standbyOffsets[channel]));
+                    drainedChannelIndex = channel;
+                } else if (standby >= 0) {
+                    hedgedPoll(channel, standby);
+                } else {
+                    deliver(mmiList.get(channel).GetMessageQueue());
+                }
+            }catch (Exception e) {
+                failSafe(channel);
+            }
+
+            truncateStandBys();
+        }
+    }
+
+    /**
+     * Poll the main channel and, if it has not answered after its hedge delay, a standby channel from its
+     * offset too (-Dmessagebus.hedge=true). The hedge delay is the -Dmessagebus.hedge.percentile (default 95) of
+     * the last HEDGE_SAMPLES poll latencies of the main channel, but at least -Dmessagebus.hedge.min.delay
+     * milliseconds (default 2), so a paused message manager delays the poll by that, not by the pause.
+     * Returns once either answered, or both failed; the other answer is delivered when it arrives.
+     * While the main channel has not answered a previous poll, only the standby is polled, so that polls do
+     * not queue up behind a paused message manager (nor their waits inflate its latencies).
+     */
+    private void hedgedPoll(int channel, int standby) throws InterruptedException, ExecutionException {
+        CompletableFuture<Boolean> primary = pendingPolls.get(channel);
+        if (primary == null || primary.isDone()) {
+            long start = System.nanoTime();
+            MessageManagerInterface main = mmiList.get(channel);
+            primary = read(channel, main::GetMessageQueue).handle((mq, e) -> {
+                if (e != null) {
+                    failSafe(channel);
+                    return false;
+                }
+                pollLatencies[channel].add(System.nanoTime() - start);
+                deliver(mq);
+                return true;
+            });
+            pendingPolls.set(channel, primary);
 
-            MessageQueue mq;
             try {
-                mq = mmiList.get(i).GetMessageQueue();
+                primary.get(pollLatencies[channel].hedgeDelay(), TimeUnit.NANOSECONDS);
+                return;
+            } catch (TimeoutException e) {
+                // the main channel is slow: ask the standby as well
+            }
+        }
+
+        MessageManagerInterface other = mmiList.get(standby);
+        long offset = standbyOffsets[standby];
+        CompletableFuture<Boolean> secondary = read(standby, () -> other.GetMessageQueue(offset)).handle((mq, e) -> {
+            if (e != null) {
+                failSafe(standby);
+                return false;
+            }
+            deliver(mq);
+            return true;
+        });
+
+        // whichever answers first, unless it failed: then the other one
+        CompletableFuture<Boolean> answered = CompletableFuture.completedFuture(true);
+        CompletableFuture<Boolean> first = primary;
+        CompletableFuture.anyOf(first.thenCompose(ok -> ok ? answered : secondary),
+                secondary.thenCompose(ok -> ok ? answered : first)).get();
+    }
+
+    /**
+     * Read a message queue on the poll lane of a channel
+     */
+    private CompletableFuture<MessageQueue> read(int channel, Callable<MessageQueue> call) {
+        CompletableFuture<MessageQueue> result = new CompletableFuture<>();
+        pollers[channel].submit(pollLanes[channel], () -> {
+            try {
+                result.complete(call.call());
             } catch (Exception e) {
-                failSafe(i);
-                continue;
+                result.completeExceptionally(e);
             }
+        });
+        return result;
+    }
 
-            int size = mq.GetSize();
-            List<Message> cmList = cacheMessageList.get(i);
-            for (int j = 0; j < size; j++) {
-                cmList.add(mq.GetMessage());
-                if (cmList.size() > MAX_CACHE_MESSAGE_COUNT) cmList.remove(0);
+    /**
+     * Append the messages of a queue to the buffer, less the copies of sends read before: every send carries
+     * the random id of the bus and a send number, so the copies read from more than one message manager, such
+     * as the replay of a standby that takes over, are dropped by the DuplicateFilter.
+     * Traced messages are stamped as drained and their post and queue latency is recorded.
+     */
+    private void deliver(MessageQueue mq) {
+        if (mq == null) return;
+
+        synchronized (prefetched) {
+            int count = mq.DrainTo(prefetched);
+
+            Iterator<Message> newest = prefetched.descendingIterator();
+            for (int i = 0; i < count; i++) {
+                Message m = newest.next();
+                if (duplicates != null && !duplicates.accept(m)) newest.remove();
+                else if (tracer.isEnabled()) tracer.drained(m);
             }
         }
     }
 
+    /**
+     * The first living channel other than the given one, -1 if there is none
+     */
+    private synchronized int standbyOf(int channel) {
+        for (int i = 0; i < mmiList.size(); i++) {
+            if (livingChannels[i] && i != channel) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Discard, on every standby channel, the messages that arrived before its previous truncation, every
+     * -Dmessagebus.standby.truncate.interval milliseconds (default 5000). The main channel was polled at least
+     * once since, so it has delivered them. The call transfers no message and answers the sequence number the
+     * standby's queue has reached, which becomes the offset of the next one: a standby that takes over is read
+     * once from its offset, replaying at most two intervals of messages. The calls are made on the poll lanes
+     * of the standby channels, so a hung message manager does not hold up the poll.
+     */
+    private void truncateStandBys() {
+        long now = System.currentTimeMillis();
+        if (now - lastTruncation < STANDBY_TRUNCATE_INTERVAL) return;
+        lastTruncation = now;
+
+        for (int i : livingChannelIndexes()) {
+            if (i == mainChannelIndex) continue;
+
+            int standby = i;
+            MessageManagerInterface mmi = mmiList.get(standby);
+            pollers[standby].submit(pollLanes[standby], () -> truncateStandBy(standby, mmi));
+        }
+    }
+
+    private void truncateStandBy(int channel, MessageManagerInterface mmi) {
+        long head;
+        synchronized (this) {
+            if (!livingChannels[channel] || mmiList.get(channel) != mmi) return;
+            head = standbyTails[channel];
+        }
+
+        try {
+            long tail = mmi.TruncateMessageQueue(head);
+            synchronized (this) {
+                if (mmiList.get(channel) != mmi || standbyTails[channel] != head) return;   // re-admitted meanwhile
+                standbyOffsets[channel] = head;
+                standbyTails[channel] = tail;
+            }
+        } catch (Exception e) {
+            failSafe(channel);
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: This method sets the placement policy of the main channel, so that
+     * the polls of the participants are spread over the message managers while
+     * every channel still gets every send; -Dmessagebus.placement sets the default.
+     * "first" (default) takes the first living channel of the list. "hash" ranks
+     * the channels by a hash of the random id of the bus and the address of each
+     * message manager, so the buses of a failed message manager spread evenly over
+     * the others. "least-loaded" takes the channel whose message manager counts the
+     * fewest readers, ties and failovers going by the hash order, and chooses again
+     * after a random delay of up to -Dmessagebus.placement.rebalance.jitter
+     * milliseconds (default 5000) whenever the main channel failed or another one
+     * was restored. The IP address of a message manager makes it the preferred one.
+     * Set before init, it decides the first main channel; set after, the main
+     * channel is moved at once if the policy prefers another one.
+     *
+     * Arguments: String - placement policy
+     *
+     * Returns: None.
+     *
+     * Exceptions: unknown placement
+     *
+     ****************************************************************************/
+    public void setPlacement(String placement) throws Exception {
+        if (mmiList.isEmpty()) {
+            this.placement = placement;     // checked by init
+            return;
+        }
+
+        checkPlacement(placement, messageManagerIPs);
+        synchronized (this) {
+            this.placement = placement;
+            preference = rankChannels();
+        }
+        rebalance();
+    }
+
     /***************************************************************************
      * Purpose: This method allows participants to listen to message manager failure events.
      *
@@ -271,33 +1170,500 @@ public class MessageBus {
         messageManagerFailureCallbacks.add(callback);
     }
 
+    /***************************************************************************
+     * Purpose: This method allows participants to listen to message manager recovery events.
+     * A recovered message manager is reported once when it is re-admitted and once more
+     * when it becomes the main channel. A message manager the placement policy moves
+     * the main channel to is reported as becoming the main channel too.
+     *
+     * Arguments: BiConsumer<String, Boolean> - callback function with the IP address of the
+     * recovered message manager and whether it is now the main channel as input.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void registerForMessageManagerRecoveryEvent(BiConsumer<String, Boolean> callback) {
+        messageManagerRecoveryCallbacks.add(callback);
+    }
+
     /**
      * Fail safe method
      * When one of the channels fails, calling this method will:
      * 1. switch the main channel to a backup if the main channel fails
      * 2. notify failure event to observers
+     * 3. schedule the first recovery probe of the channel
      */
     private void failSafe(int channelIndex) {
-        if (channelIndex >= mmiList.size() || !livingChannels[channelIndex]) return;
+        boolean foundBackup;
+        synchronized (this) {
+            if (channelIndex >= mmiList.size() || !livingChannels[channelIndex]) return;
+
+            livingChannels[channelIndex] = false;
+
+            int backup = preferredLivingChannel();
+            foundBackup = backup >= 0;
+            if (foundBackup && channelIndex == mainChannelIndex) {
+                switchMainChannel(backup);
+                if (PLACEMENT_LEAST_LOADED.equals(placement)) scheduleRebalance();
+            }
+        }
 
         String IP = messageManagerIPs.get(channelIndex);
-        livingChannels[channelIndex] = false;
+        messageManagerFailureCallbacks.forEach(o -> o.accept(IP, !foundBackup));
 
-        boolean foundBackup = false;
-        for (int i = 0; i < mmiList.size(); i++) {
-            if (livingChannels[i]) {
-                foundBackup = true;
-                mainChannelIndex = i;
+        scheduleProbe(channelIndex);
+    }
+
+    /**
+     * Make a channel the main one. Its membership is queried from a snapshot, and it is read from its
+     * offset by the next poll.
+     */
+    private void switchMainChannel(int channelIndex) {
+        mainChannelIndex = channelIndex;
+        membershipVersions[channelIndex] = 0;
+    }
+
+    /**
+     * Probe a failed channel after its backoff, which doubles from -Dmessagebus.recovery.backoff.initial (default
+     * 1000) to -Dmessagebus.recovery.backoff.max (default 30000) milliseconds while it stays down. The probe runs on a lane of the send pool of its message
+     * manager, so a slow connection attempt holds neither a thread of the ParticipantRuntime nor one that
+     * the other message managers need.
+     */
+    private void scheduleProbe(int channelIndex) {
+        if (unregistered) return;
+
+        double jitter = RECOVERY_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        long delay = Math.round(recoveryBackoffs[channelIndex] * (1 + jitter));
+        ParticipantRuntime.getInstance().schedule(
+                () -> senders[channelIndex].submit(probeLanes[channelIndex], () -> probe(channelIndex)), delay);
+    }
+
+    /**
+     * Half-open probe of a failed channel: re-admit it if its message manager answers, otherwise
+     * open the circuit again for twice as long.
+     */
+    private void probe(int channelIndex) {
+        if (unregistered || livingChannels[channelIndex]) return;    // re-registered after a heart beat
+
+        MessageManagerInterface old = mmiList.get(channelIndex);
+        MessageManagerInterface mmi = old;
+        long tail;
+        try {
+            // the message manager only lost its connection: it still queues our messages
+            tail = mmi.TruncateMessageQueue(standbyTails[channelIndex]);
+        } catch (Exception e) {
+            try {
+                // it restarted (or dropped us): register with it again
+                mmi = register(channelIndex, old);
+                tail = 0;
+            } catch (Exception e2) {
+                synchronized (this) {
+                    recoveryBackoffs[channelIndex] = Math.min(RECOVERY_MAX_BACKOFF, 2 * recoveryBackoffs[channelIndex]);
+                }
+                scheduleProbe(channelIndex);
+                return;
+            }
+        }
+
+        if (!readmit(channelIndex, mmi, tail) && mmi != old) discard(mmi);
+    }
+
+    /**
+     * A message manager that answered a heart beat with 0 restarted without a call of the bus failing in
+     * between. The channel is failed over as any other, registered with again and re-admitted at once, and the
+     * missed heart beat is sent on the new registration, so the participant is a member again right away.
+     * Should the registration fail, the probe scheduled by the failover keeps trying.
+     * Only the bookkeeping holds the bus: the remote calls are made without it.
+     */
+    private long reregister(int channelIndex, MessageManagerInterface stale, String type) throws Exception {
+        MessageManagerInterface current = mmiList.get(channelIndex);
+        if (current != stale) return current.HeartBeat(type);    // another caller registered with it meanwhile
+
+        failSafe(channelIndex);
+        MessageManagerInterface mmi = register(channelIndex, stale);
+        if (!readmit(channelIndex, mmi, 0)) {
+            discard(mmi);
+            mmi = mmiList.get(channelIndex);
+        }
+        return mmi.HeartBeat(type);
+    }
+
+    /**
+     * Register with the message manager of a channel again, dropping the old registration if it still exists
+     */
+    private MessageManagerInterface register(int channelIndex, MessageManagerInterface old) throws Exception {
+        MessageManagerInterface mmi = connect(messageManagerIPs.get(channelIndex));
+        discard(old);
+        return mmi;
+    }
+
+    /**
+     * Drop a registration the bus no longer uses
+     */
+    private static void discard(MessageManagerInterface mmi) {
+        try {
+            mmi.UnRegister();
+        } catch (Exception e) {
+            // it is gone with its message manager, or expires with the missing heart beats
+        }
+    }
+
+    /**
+     * Put a channel back into service with the given connection. False if it was re-admitted meanwhile, by a
+     * probe or another heart beat, and the connection is not used.
+     */
+    private boolean readmit(int channelIndex, MessageManagerInterface mmi, long tail) {
+        boolean main;
+        long readmissionTime;
+        synchronized (this) {
+            if (livingChannels[channelIndex]) return false;
+            mmiList.set(channelIndex, mmi);
+
+            // a standby is caught up from now on; a channel taking over is read from before its failure
+            main = !livingChannels[mainChannelIndex];
+            standbyOffsets[channelIndex] = main ? Math.min(standbyTails[channelIndex], tail) : tail;
+            standbyTails[channelIndex] = tail;
+            livingChannels[channelIndex] = true;
+            readmissionTime = System.currentTimeMillis();
+            readmissionTimes[channelIndex] = readmissionTime;
+
+            if (main) switchMainChannel(channelIndex);
+        }
+
+        String IP = messageManagerIPs.get(channelIndex);
+        messageManagerRecoveryCallbacks.forEach(o -> o.accept(IP, main));
+
+        scheduleReplay(replayJitter());
+
+        ParticipantRuntime.getInstance().schedule(() -> restore(channelIndex, readmissionTime), RECOVERY_RESTORE_DELAY);
+        return true;
+    }
+
+    /**
+     * A re-admitted channel that stayed up for -Dmessagebus.recovery.restore.delay milliseconds (default 10000)
+     * gets its backoff reset and, if the placement prefers it to the main channel, becomes the main channel
+     * again, so a flapping message manager neither takes the main channel back and forth nor is probed at a
+     * high rate. With "least-loaded" the placement is made again instead, as the restored message manager has
+     * lost its readers.
+     */
+    private void restore(int channelIndex, long readmissionTime) {
+        boolean restored;
+        synchronized (this) {
+            if (!livingChannels[channelIndex] || readmissionTimes[channelIndex] != readmissionTime) return;
+
+            recoveryBackoffs[channelIndex] = RECOVERY_INITIAL_BACKOFF;
+            if (PLACEMENT_LEAST_LOADED.equals(placement)) {
+                scheduleRebalance();
+                return;
+            }
+            restored = rank(channelIndex) < rank(mainChannelIndex);
+            if (restored) switchMainChannel(channelIndex);
+        }
+
+        if (restored) {
+            String IP = messageManagerIPs.get(channelIndex);
+            messageManagerRecoveryCallbacks.forEach(o -> o.accept(IP, true));
+        }
+    }
+
+    /**
+     * Move the main channel to the one the placement prefers among the living channels. With "least-loaded"
+     * that is the channel with the fewest readers, and the bus, which counts as a reader of its main channel,
+     * only moves if it then has fewer readers than before.
+     */
+    private void rebalance() {
+        if (unregistered) return;
+
+        boolean byLoad = PLACEMENT_LEAST_LOADED.equals(placement);
+        long[] loads = byLoad ? readerCounts() : null;
+        int target;
+        synchronized (this) {
+            int main = mainChannelIndex;
+            target = byLoad ? leastLoaded(loads) : preferredLivingChannel();
+            if (byLoad && target >= 0 && livingChannels[main] && loads[main] <= loads[target] + 1) return;
+            if (target < 0 || target == main) return;
+
+            switchMainChannel(target);
+        }
+
+        String IP = messageManagerIPs.get(target);
+        messageManagerRecoveryCallbacks.forEach(o -> o.accept(IP, true));
+    }
+
+    /**
+     * Rebalance after a random delay, so that the buses that saw the same event do not all count the
+     * readers at the same moment
+     */
+    private void scheduleRebalance() {
+        if (unregistered) return;
+
+        long delay = (long) (ThreadLocalRandom.current().nextDouble() * REBALANCE_JITTER);
+        ParticipantRuntime.getInstance().schedule(() -> BACKGROUND.submit(placementLane, this::rebalance), delay);
+    }
+
+    /**
+     * Order the channels as the placement prefers them as the main channel
+     */
+    private int[] rankChannels() {
+        int count = messageManagerIPs.size();
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+
+        switch (placement) {
+            case PLACEMENT_FIRST:
                 break;
+            case PLACEMENT_HASH:
+            case PLACEMENT_LEAST_LOADED:
+                Arrays.sort(order, (a, b) -> Long.compare(weight(b), weight(a)));
+                break;
+            default:
+                // an explicit message manager first, then the others in list order
+                int explicit = messageManagerIPs.indexOf(placement);
+                System.arraycopy(order, 0, order, 1, explicit);
+                order[0] = explicit;
+        }
+
+        int[] ranking = new int[count];
+        for (int i = 0; i < count; i++) ranking[i] = order[i];
+        return ranking;
+    }
+
+    /**
+     * Rendezvous hash weight of a channel for this bus
+     */
+    private long weight(int channelIndex) {
+        long h = origin ^ messageManagerIPs.get(channelIndex).hashCode() * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    private synchronized int rank(int channelIndex) {
+        for (int i = 0; i < preference.length; i++) {
+            if (preference[i] == channelIndex) return i;
+        }
+        return preference.length;
+    }
+
+    /**
+     * The living channel the placement prefers, -1 if every channel is down
+     */
+    private synchronized int preferredLivingChannel() {
+        for (int channel : preference) {
+            if (livingChannels[channel]) return channel;
+        }
+        return -1;
+    }
+
+    /**
+     * The living channel with the fewest readers, the preferred one among equals; -1 if none answered
+     */
+    private synchronized int leastLoaded(long[] loads) {
+        int best = -1;
+        for (int channel : preference) {
+            if (livingChannels[channel] && loads[channel] != Long.MAX_VALUE && (best < 0 || loads[channel] < loads[best])) {
+                best = channel;
             }
         }
+        return best;
+    }
+
+    /**
+     * Number of readers of every living channel, Long.MAX_VALUE for the others
+     */
+    private long[] readerCounts() {
+        long[] loads = new long[mmiList.size()];
+        for (int i = 0; i < loads.length; i++) {
+            loads[i] = Long.MAX_VALUE;
+            if (!livingChannels[i]) continue;
 
-        boolean finalFoundBackup = foundBackup;
-        messageManagerFailureCallbacks.forEach(o -> o.accept(IP, !finalFoundBackup));
+            try {
+                loads[i] = mmiList.get(i).GetReaderCount();
+            } catch (Exception e) {
+                failSafe(i);
+            }
+        }
+        return loads;
     }
 
-    private void failSafe() {
-        failSafe(mainChannelIndex);
+    private static void checkPlacement(String placement, List<String> messageManagerIPs) throws Exception {
+        switch (placement) {
+            case PLACEMENT_FIRST:
+            case PLACEMENT_HASH:
+            case PLACEMENT_LEAST_LOADED:
+                return;
+            default:
+                if (!messageManagerIPs.contains(placement)) throw new Exception("unknown placement: " + placement);
+        }
+    }
+
+    /**
+     * The pool of a message manager, created on first use and shared by every bus of the process
+     */
+    private static EventDispatcher dispatcher(Map<String, EventDispatcher> pools, String name, String IP, int threads) {
+        return pools.computeIfAbsent(IP, k -> new EventDispatcher(name + k, threads));
+    }
+
+    private static MessageManagerInterface connect(String IP) throws Exception {
+        if (LOCAL_HOST.equals(IP)) return new MessageManagerInterface();
+        return new MessageManagerInterface(IP);
+    }
+
+    private synchronized int[] livingChannelIndexes() {
+        int count = 0;
+        for (int i = 0; i < mmiList.size(); i++) {
+            if (livingChannels[i]) count++;
+        }
+
+        int[] channels = new int[count];
+        for (int i = 0, j = 0; i < mmiList.size(); i++) {
+            if (livingChannels[i]) channels[j++] = i;
+        }
+        return channels;
+    }
+
+    /**
+     * Number of acknowledgements a send waits for, out of the given number of channels
+     */
+    private static int quorum(int channels) {
+        switch (SEND_QUORUM) {
+            case "1":
+                return 1;
+            case "majority":
+                return channels / 2 + 1;
+            default:
+                return channels;
+        }
+    }
+
+    /**
+     * Latencies of the last HEDGE_SAMPLES polls of a channel. The hedge delay is their percentile, recomputed
+     * every quarter of the window; there is no hedging before a quarter of the window was seen.
+     */
+    private static class PollLatency {
+        private final long[] samples = new long[HEDGE_SAMPLES];
+        private long count = 0;
+        private long delay = Long.MAX_VALUE;
+
+        synchronized void add(long nanos) {
+            samples[(int) (count++ % HEDGE_SAMPLES)] = nanos;
+            if (count % (HEDGE_SAMPLES / 4) != 0) return;
+
+            int size = (int) Math.min(count, HEDGE_SAMPLES);
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(HEDGE_PERCENTILE / 100 * size) - 1;
+            long percentile = sorted[Math.max(0, Math.min(size - 1, index))];
+            delay = Math.max(TimeUnit.MILLISECONDS.toNanos(HEDGE_MIN_DELAY), percentile);
+        }
+
+        synchronized long hedgeDelay() {
+            return delay;
+        }
+    }
+
+    /**
+     * A subscriber of the bus and the number of messages it requested but was not given yet
+     */
+    private class BusSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Message> subscriber;
+        private long demand = 0;    // guarded by prefetched
+        private volatile boolean cancelled = false;
+
+        BusSubscription(Flow.Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                SUBSCRIBERS.submit(this, () -> subscriber.onError(new IllegalArgumentException("non-positive request: " + n)));
+                return;
+            }
+
+            synchronized (prefetched) {
+                demand = (Long.MAX_VALUE - demand < n) ? Long.MAX_VALUE : demand + n;
+            }
+            dispatch();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            if (subscriptions.remove(this)) dispatch();     // the others may have been waiting for this one
+        }
+
+        void deliver(Message[] batch) {
+            if (demand != Long.MAX_VALUE) demand -= batch.length;
+            SUBSCRIBERS.submit(this, () -> {
+                for (Message m : batch) {
+                    if (cancelled) return;
+                    subscriber.onNext(m);
+                }
+            });
+        }
+    }
+
+    /**
+     * Acknowledgements of one message sent to several channels in parallel
+     */
+    private static class SendAcknowledgement {
+        private final int needed;
+        private int acknowledged = 0;
+        private int outstanding;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        SendAcknowledgement(int needed, int channels) {
+            this.needed = needed;
+            this.outstanding = channels;
+        }
+
+        void done(boolean sent) {
+            boolean reached, failed;
+            synchronized (this) {
+                outstanding--;
+                if (sent) acknowledged++;
+                reached = acknowledged >= needed;
+                failed = !reached && outstanding == 0;
+            }
+
+            if (reached) result.complete(null);
+            else if (failed) result.completeExceptionally(new Exception("sent to fewer than " + needed + " message channels"));
+        }
+
+        /**
+         * True once every channel answered and none of them took the message
+         */
+        synchronized boolean noneAcknowledged() {
+            return outstanding == 0 && acknowledged == 0;
+        }
+
+        /**
+         * Wait for the quorum, or for every channel to answer when the quorum cannot be reached
+         */
+        void await() throws InterruptedException {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                // the channels that failed were handed to failSafe
+            }
+        }
+    }
+
+    /**
+     * A message in the outbox and the future of its caller, null if nobody waits for it
+     */
+    private static class PendingMessage {
+        private final Message message;
+        private final CompletableFuture<Void> sent;
+
+        PendingMessage(Message message, CompletableFuture<Void> sent) {
+            this.message = message;
+            this.sent = sent;
+        }
     }
 
     private boolean defender() {
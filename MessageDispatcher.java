@@ -0,0 +1,199 @@
+import MessagePackage.Message;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Description:
+ * This class dispatches messages pulled from MessageBus to handlers registered by message ID and,
+ * optionally, by command code (a letter followed by a digit, e.g. "H1"). Handlers are kept in
+ * array-indexed tables so that dispatching a batch costs one array lookup per message and never
+ * compares strings. Command codes are matched case-insensitively, like the equalsIgnoreCase checks
+ * the participants used before.
+ * Messages are pulled with MessageBus.drainTo into a buffer the dispatcher keeps, so a poll allocates nothing.
+ */
+public class MessageDispatcher {
+    private static final int MIN_MESSAGE_ID = -128;
+    private static final int MAX_MESSAGE_ID = 127;
+    private static final int COMMAND_CODE_COUNT = 26 * 10; // letter A-Z followed by digit 0-9
+    private static final int POLL_BATCH_SIZE = 256;
+
+    private MessageBus mb;
+    private MessageTracer tracer;
+    private Consumer<Message>[] idHandlers;
+    private Consumer<Message>[][] commandHandlers;
+    private Consumer<Message> defaultHandler;
+    private Message[] pollBuffer;
+
+    public MessageDispatcher(MessageBus mb) {
+        this.mb = mb;
+        this.tracer = MessageTracer.getInstance();
+        idHandlers = handlerTable(MAX_MESSAGE_ID - MIN_MESSAGE_ID + 1);
+        commandHandlers = handlerTables(MAX_MESSAGE_ID - MIN_MESSAGE_ID + 1);
+        pollBuffer = new Message[POLL_BATCH_SIZE];
+    }
+
+    /***************************************************************************
+     * Purpose: Register a handler for every message with the given ID. If command
+     * handlers are registered for the same ID, this handler only receives the
+     * messages whose command has no handler of its own.
+     *
+     * Arguments:
+     * int - message ID
+     * Consumer<Message> - handler
+     *
+     * Returns: None.
+     *
+     * Exceptions: IllegalArgumentException if the ID is out of the table range.
+     *
+     ****************************************************************************/
+    public void register(int messageId, Consumer<Message> handler) {
+        idHandlers[slot(messageId)] = handler;
+    }
+
+    /***************************************************************************
+     * Purpose: Register a handler for messages with the given ID whose text is
+     * the given command code.
+     *
+     * Arguments:
+     * int - message ID
+     * String - command code, a letter followed by a digit (e.g. "H1")
+     * Consumer<Message> - handler
+     *
+     * Returns: None.
+     *
+     * Exceptions: IllegalArgumentException if the ID or the command code is invalid.
+     *
+     ****************************************************************************/
+    public void register(int messageId, String command, Consumer<Message> handler) {
+        int slot = slot(messageId);
+        int code = commandCode(command);
+        if (code < 0) throw new IllegalArgumentException("invalid command code: " + command);
+
+        if (commandHandlers[slot] == null) commandHandlers[slot] = handlerTable(COMMAND_CODE_COUNT);
+        commandHandlers[slot][code] = handler;
+    }
+
+    /***************************************************************************
+     * Purpose: Register a handler for messages no other handler is registered for.
+     *
+     * Arguments: Consumer<Message> - handler, or null to drop such messages.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void registerDefault(Consumer<Message> handler) {
+        defaultHandler = handler;
+    }
+
+    /***************************************************************************
+     * Purpose: Pull the available messages from MessageBus and dispatch them.
+     *
+     * Arguments: None.
+     *
+     * Returns: int - number of messages pulled.
+     *
+     * Exceptions: Participant not registered, Get messages exception
+     *
+     ****************************************************************************/
+    public int poll() throws Exception {
+        int total = 0, count;
+        do {
+            count = mb.drainTo(pollBuffer);
+            for (int i = 0; i < count; i++) {
+                dispatch(pollBuffer[i]);
+                pollBuffer[i] = null;
+            }
+            total += count;
+        } while (count == pollBuffer.length);
+
+        return total;
+    }
+
+    /***************************************************************************
+     * Purpose: Dispatch a batch of messages in order.
+     *
+     * Arguments: List<Message> - messages to dispatch.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void dispatch(List<Message> messageList) {
+        for (Message m : messageList) {
+            dispatch(m);
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: Dispatch a single message. A traced message is stamped as
+     * handled when it reaches its handler.
+     *
+     * Arguments: Message - message to dispatch.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void dispatch(Message m) {
+        Consumer<Message> handler = null;
+        int id = m.GetMessageId();
+
+        if (id >= MIN_MESSAGE_ID && id <= MAX_MESSAGE_ID) {
+            int slot = id - MIN_MESSAGE_ID;
+            Consumer<Message>[] commands = commandHandlers[slot];
+            if (commands != null) {
+                int code = commandCode(m.GetMessage());
+                if (code >= 0) handler = commands[code];
+            }
+            if (handler == null) handler = idHandlers[slot];
+        }
+        if (handler == null) handler = defaultHandler;
+
+        if (handler != null) {
+            tracer.handled(m);
+            handler.accept(m);
+        }
+    }
+
+    /**
+     * Generic arrays cannot be created directly; the tables only ever hold Consumer<Message>
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Consumer<Message>[] handlerTable(int size) {
+        return new Consumer[size];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Consumer<Message>[][] handlerTables(int size) {
+        return new Consumer[size][];
+    }
+
+    private int slot(int messageId) {
+        if (messageId < MIN_MESSAGE_ID || messageId > MAX_MESSAGE_ID) {
+            throw new IllegalArgumentException("message ID out of range: " + messageId);
+        }
+        return messageId - MIN_MESSAGE_ID;
+    }
+
+    /**
+     * Map a command code to its table index without building or comparing strings
+     *
+     * @param text message text
+     * @return table index, or -1 if the text is not a command code
+     */
+    private static int commandCode(String text) {
+        if (text == null || text.length() != 2) return -1;
+
+        char letter = text.charAt(0);
+        char digit = text.charAt(1);
+        if (letter >= 'a' && letter <= 'z') letter -= 'a' - 'A';
+        if (letter < 'A' || letter > 'Z' || digit < '0' || digit > '9') return -1;
+
+        return (letter - 'A') * 10 + (digit - '0');
+    }
+}
@@ -9,6 +9,11 @@
  * Description: This class is the message manager responsible for receiving and distributing messages from participants
  *			   and all associated house keeping chores. Communication with participants is via RMI. There are
  *			   a number of RMI methods that allow participants to register, post messages, get messages,
+ *			   report their liveness with heart beats and query the membership.
+ *			   The participants that poll their queue here, i.e. use this message manager as their main
+ *			   one, are counted as readers so that participants can spread their polls over the message
+ *			   managers. A participant stops counting when it truncates its queue here, as standbys do,
+ *			   or has not polled for -Dmessagemanager.reader.window milliseconds (default 3000).
  *
  * Parameters: None
  *
@@ -26,11 +31,17 @@ import java.util.*;
 public class MessageManager extends UnicastRemoteObject implements RMIMessageManagerInterface {
     static Vector<MessageQueue> MessageQueueList;    // This is the list of message queues.
     static RequestLogger l;                    // This is a request logger - Logger is a private inner class
+    static long LastIssuedId = 0;                // The most recently issued participant id
+    static MembershipTable Members;                // Heart beat state of the registered participants
+    static Map<Long, Long> Readers;                // Time of the last poll of the participants reading here
+    static final long READER_WINDOW = Long.getLong("messagemanager.reader.window", 3000);
 
     public MessageManager() throws RemoteException {
         super();                                        // Required by RMI
         l = new RequestLogger();                        // Screen logging object
         MessageQueueList = new Vector<MessageQueue>(15, 1);    // Queue for storing messages
+        Members = new MembershipTable();                // Membership state
+        Readers = new HashMap<Long, Long>();            // Participants polling this message manager
 
     } // Constructor
 
@@ -81,10 +92,16 @@ public class MessageManager extends UnicastRemoteObject implements RMIMessageMan
      ****************************************************************************/
 
     synchronized public long Register() throws RemoteException {
-        // Create a new queue and add it to the list of message queues.
+        // Create a new queue and add it to the list of message queues. Ids are the
+        // registration time in milliseconds; when several participants register in the
+        // same millisecond the id is moved forward so that every queue id stays unique.
 
-        MessageQueue mq = new MessageQueue();
+        long id = Math.max(System.currentTimeMillis(), LastIssuedId + 1);
+        LastIssuedId = id;
+
+        MessageQueue mq = new MessageQueue(id);
         MessageQueueList.add(mq);
+        Members.register(id);
 
         l.DisplayStatistics("Register message. Issued ID = " + mq.GetId());
 
@@ -123,6 +140,9 @@ public class MessageManager extends UnicastRemoteObject implements RMIMessageMan
 
         } // for
 
+        Members.unregister(id);
+        Readers.remove(id);
+
         if (found)
             l.DisplayStatistics("Unregistered ID::" + id);
         else
@@ -145,6 +165,10 @@ public class MessageManager extends UnicastRemoteObject implements RMIMessageMan
     synchronized public void SendMessage(Message m) throws RemoteException {
         MessageQueue mq;
 
+        // Stamp traced messages before they are copied to the queues.
+
+        if (m.IsTraced()) m.SetTraceTime(Message.TRACE_ENQUEUED, System.currentTimeMillis());
+
         // For every queue on the list, add the message.
 
         for (int i = 0; i < MessageQueueList.size(); i++) {
@@ -158,6 +182,107 @@ public class MessageManager extends UnicastRemoteObject implements RMIMessageMan
 
     } // SendMessage
 
+    /***************************************************************************
+     * Remote METHOD:: SendMessage
+     * Purpose: This method allows participants to send messages to the message
+     *		   manager without stamping the sender id themselves. The id is set
+     *		   on the copy of the message received by this process.
+     *
+     * Arguments: long id - participants id
+     *			 Message
+     *
+     * Returns: None
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public void SendMessage(long id, Message m) throws RemoteException {
+        SendMessage(id, 0, 0, m);
+
+    } // SendMessage
+
+    /***************************************************************************
+     * Remote METHOD:: SendMessage
+     * Purpose: This method is SendMessage(id, m) for a send with an identity:
+     *		   the id of the sending message bus and the number it gave the send
+     *		   are set on the copy of the message received by this process.
+     *
+     * Arguments: long id - participants id
+     *			 long origin - id of the sending message bus, 0 for none
+     *			 long sequence - number of the send
+     *			 Message
+     *
+     * Returns: None
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public void SendMessage(long id, long origin, long sequence, Message m) throws RemoteException {
+        m.SetSenderId(id);
+        m.SetSendSequence(origin, sequence);
+        SendMessage(m);
+
+    } // SendMessage
+
+    /***************************************************************************
+     * Remote METHOD:: SendMessages
+     * Purpose: This method posts a batch of messages from one participant, in
+     *		   order, as if each had been sent with SendMessage(id, m). The batch
+     *		   costs one remote call and one log line.
+     *
+     * Arguments: long id - participants id
+     *			 Message[] - messages
+     *
+     * Returns: None
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public void SendMessages(long id, Message[] messages) throws RemoteException {
+        SendMessages(id, 0, 0, messages);
+
+    } // SendMessages
+
+    /***************************************************************************
+     * Remote METHOD:: SendMessages
+     * Purpose: This method is SendMessages(id, messages) for a batch of sends
+     *		   with an identity. The messages are numbered from firstSequence on,
+     *		   in array order.
+     *
+     * Arguments: long id - participants id
+     *			 long origin - id of the sending message bus, 0 for none
+     *			 long firstSequence - number of the first send
+     *			 Message[] - messages
+     *
+     * Returns: None
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public void SendMessages(long id, long origin, long firstSequence, Message[] messages) throws RemoteException {
+        long now = System.currentTimeMillis();
+
+        for (int k = 0; k < messages.length; k++) {
+            Message m = messages[k];
+            m.SetSenderId(id);
+            m.SetSendSequence(origin, origin == 0 ? 0 : firstSequence + k);
+            if (m.IsTraced()) m.SetTraceTime(Message.TRACE_ENQUEUED, now);
+
+            for (int i = 0; i < MessageQueueList.size(); i++) {
+                MessageQueueList.get(i).AddMessage(m);
+
+            } // for
+
+        } // for
+
+        l.DisplayStatistics("Incoming batch of " + messages.length + " messages posted from ID: " + id);
+
+    } // SendMessages
+
     /***************************************************************************
      * Remote METHOD:: GetMessage
      * Purpose: Get the message queue for a participant (id).
@@ -187,6 +312,7 @@ public class MessageManager extends UnicastRemoteObject implements RMIMessageMan
                 mq = MessageQueueList.get(i);
                 temp = mq.GetCopy();
                 mq.ClearMessageQueue();
+                Readers.put(id, System.currentTimeMillis());
                 found = true;
 
             } // if
@@ -202,6 +328,174 @@ public class MessageManager extends UnicastRemoteObject implements RMIMessageMan
 
     } // GetMessageList
 
+    /***************************************************************************
+     * Remote METHOD:: GetMessage
+     * Purpose: Get the messages of a participant (id) from a sequence number on,
+     *		   and clear its queue. The messages before the sequence number were
+     *		   already delivered by another message manager.
+     *
+     * Arguments: long id - participants id
+     *			 long sequence - sequence number of the first message to return
+     *
+     * Returns: MessageQueue
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public MessageQueue GetMessageQueue(long id, long sequence) throws RemoteException {
+        MessageQueue mq = FindMessageQueue(id), temp = null;
+
+        if (mq != null) {
+            temp = mq.GetCopy();
+            temp.Truncate(sequence);
+            mq.ClearMessageQueue();
+            l.DisplayStatistics("Get message queue request from ID: " + id + " from sequence " + sequence + ". "
+                    + temp.GetSize() + " messages returned.");
+
+        } else {
+            l.DisplayStatistics("Get message queue request from ID: " + id + ". ID not found.");
+
+        } // if
+
+        return temp;
+
+    } // GetMessageQueue
+
+    /***************************************************************************
+     * Remote METHOD:: TruncateMessageQueue
+     * Purpose: Discard the messages of a participant (id) that precede a
+     *		   sequence number. Participants call it on their standby message
+     *		   managers instead of getting the queue, so that a standby holds only
+     *		   the messages it may have to deliver if the main one fails.
+     *
+     * Arguments: long id - participants id
+     *			 long sequence - sequence number of the first message to keep
+     *
+     * Returns: long - sequence number the next message of the queue will get,
+     *		   -1 if the participant is not registered
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public long TruncateMessageQueue(long id, long sequence) throws RemoteException {
+        MessageQueue mq = FindMessageQueue(id);
+
+        if (mq == null) {
+            l.DisplayStatistics("Truncate message queue request from ID: " + id + ". ID not found.");
+            return -1;
+
+        } // if
+
+        mq.Truncate(sequence);
+        Readers.remove(id);
+        l.DisplayStatistics("Truncate message queue request from ID: " + id + ". " + mq.GetSize() + " messages kept.");
+
+        return mq.GetNextSequence();
+
+    } // TruncateMessageQueue
+
+    /***************************************************************************
+     * Remote METHOD:: HeartBeat
+     * Purpose: This method records a heart beat of a participant in the
+     *		   membership state. Heart beats are not posted to the message
+     *		   queues, so only the participants that query the membership
+     *		   ever see them.
+     *
+     * Arguments: long id - participants id
+     *			 String type - participant type
+     *
+     * Returns: long - the heart beat interval requested from the participant in
+     *		   milliseconds, 0 if the participant is not registered
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public long HeartBeat(long id, String type) throws RemoteException {
+        long interval = Members.heartBeat(id, type, System.currentTimeMillis());
+
+        if (interval > 0)
+            l.DisplayStatistics("Heart beat from ID: " + id + ". Next heart beat in " + interval + " ms.");
+        else
+            l.DisplayStatistics("Heart beat from ID: " + id + ". ID not found.");
+
+        return interval;
+
+    } // HeartBeat
+
+    /***************************************************************************
+     * Remote METHOD:: GetMembership
+     * Purpose: Get the participants that sent a heart beat or unregistered
+     *		   after a membership version (see the class: Membership.java).
+     *
+     * Arguments: long version - version returned by the previous query, 0 for
+     *			 a snapshot of every live participant
+     *
+     * Returns: Membership
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public Membership GetMembership(long version) throws RemoteException {
+        Membership ms = Members.changesSince(version, System.currentTimeMillis());
+
+        l.DisplayStatistics("Membership request. " + ms.size() + " heart beat(s), " + ms.leftCount() + " departure(s) returned.");
+
+        return ms;
+
+    } // GetMembership
+
+    /***************************************************************************
+     * Remote METHOD:: GetReaderCount
+     * Purpose: Get the number of participants that poll their queue on this
+     *		   message manager, i.e. use it as their main one. Participants
+     *		   compare it between message managers to pick the least loaded.
+     *
+     * Arguments: None
+     *
+     * Returns: int - participants that polled within the reader window and did
+     *		   not truncate their queue since
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    synchronized public int GetReaderCount() throws RemoteException {
+        long now = System.currentTimeMillis();
+        Readers.values().removeIf(lastPoll -> now - lastPoll > READER_WINDOW);
+
+        l.DisplayStatistics("Reader count request. " + Readers.size() + " reader(s) returned.");
+
+        return Readers.size();
+
+    } // GetReaderCount
+
+    /***************************************************************************
+     * CONCRETE METHOD:: FindMessageQueue
+     * Purpose: Find the message queue of a participant (id).
+     *
+     * Arguments: long id - participants id
+     *
+     * Returns: MessageQueue, null if the participant is not registered
+     *
+     * Exceptions: None
+     *
+     ****************************************************************************/
+
+    private MessageQueue FindMessageQueue(long id) {
+        for (int i = 0; i < MessageQueueList.size(); i++) {
+            MessageQueue mq = MessageQueueList.get(i);
+            if (mq.GetId() == id) return mq;
+
+        } // for
+
+        return null;
+
+    } // FindMessageQueue
+
     /***************************************************************************
      * INNER CLASS:: Logger
      * Purpose: This class longs requests by displaying them on the server with
@@ -220,11 +514,15 @@ public class MessageManager extends UnicastRemoteObject implements RMIMessageMan
 
     private class RequestLogger {
         int RequestsServiced = 0;    // This is the number of requests seviced
+        boolean Quiet = Boolean.getBoolean("messagemanager.quiet");    // -Dmessagemanager.quiet=true turns off the per request display
 
         void DisplayStatistics(String message) {
             RequestsServiced++;
 
-            if (message.length() == 0) {
+            if (Quiet) {
+                return;
+
+            } else if (message.length() == 0) {
                 System.out.println("-------------------------------------------------------------------------------");
                 System.out.println("Number of requests: " + RequestsServiced);
                 System.out.println("Number of registered participants: " + MessageQueueList.size());
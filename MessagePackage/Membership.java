@@ -0,0 +1,124 @@
+package MessagePackage;
+
+import java.io.Serializable;
+
+/**
+ * Description:
+ * This class is the reply of the membership query of the message manager. It lists the participants
+ * that sent a heart beat, and the participants that unregistered, after the version the caller already
+ * knows. Passing the returned version to the next query yields only the changes made in between.
+ * When the caller's version is 0 or too old for the message manager to know what changed since, the
+ * reply is a snapshot of every live member instead, and the departures it cannot report are left out.
+ * Heart beat times are sent as the silence, in milliseconds, between the last heart beat and the moment
+ * the reply was built, so that no clock has to be shared between the message manager and its callers.
+ * Each member also comes with the silence after which the failure detector of the message manager suspects it.
+ */
+public class Membership implements Serializable {
+    private static final long serialVersionUID = 1L;    // sent between separately built processes
+
+    private long version;
+    private boolean snapshot;
+    private long[] ids;
+    private String[] types;
+    private long[] silences;
+    private long[] timeouts;
+    private long[] leftIds;
+
+    public Membership(long version, boolean snapshot, long[] ids, String[] types, long[] silences, long[] timeouts,
+                      long[] leftIds) {
+        this.version = version;
+        this.snapshot = snapshot;
+        this.ids = ids;
+        this.types = types;
+        this.silences = silences;
+        this.timeouts = timeouts;
+        this.leftIds = leftIds;
+    }
+
+    /***************************************************************************
+     * Purpose: Get the version to pass to the next query
+     *
+     * Arguments: None.
+     *
+     * Returns: long.
+     *
+     ****************************************************************************/
+    public long getVersion() {
+        return version;
+    }
+
+    /***************************************************************************
+     * Purpose: Tell whether this reply lists every live member rather than
+     * the changes since the version of the query
+     *
+     * Arguments: None.
+     *
+     * Returns: boolean.
+     *
+     ****************************************************************************/
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /***************************************************************************
+     * Purpose: Number of members that sent a heart beat
+     *
+     * Arguments: None.
+     *
+     * Returns: int.
+     *
+     ****************************************************************************/
+    public int size() {
+        return ids.length;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public String getType(int index) {
+        return types[index];
+    }
+
+    /***************************************************************************
+     * Purpose: Get the time elapsed since the last heart beat of a member
+     *
+     * Arguments: int - member index.
+     *
+     * Returns: long - milliseconds, as measured by the message manager.
+     *
+     ****************************************************************************/
+    public long getSilence(int index) {
+        return silences[index];
+    }
+
+    /***************************************************************************
+     * Purpose: Get the silence after the last heart beat of a member at which it
+     * is suspected to have failed. It is learned from the intervals between the
+     * member's heart beats (see the class: PhiAccrualDetector.java).
+     *
+     * Arguments: int - member index.
+     *
+     * Returns: long - milliseconds.
+     *
+     ****************************************************************************/
+    public long getTimeout(int index) {
+        return timeouts[index];
+    }
+
+    /***************************************************************************
+     * Purpose: Number of members that unregistered
+     *
+     * Arguments: None.
+     *
+     * Returns: int.
+     *
+     ****************************************************************************/
+    public int leftCount() {
+        return leftIds.length;
+    }
+
+    public long getLeftId(int index) {
+        return leftIds[index];
+    }
+}
@@ -23,6 +23,28 @@
 *				MessageText - This is a string of text that is passed along with the message. Again, there is no
 *							  particular semantic associated with the text.
 *
+*				Value - Optional primitive payload (float, double or long) carried alongside the text. Numeric
+*						readings use this field instead of the text so they are neither formatted on the sending
+*						side nor parsed on the receiving side. ValueType records which primitive was stored.
+*
+*				TimeStamp - Time (in milliseconds) at which a numeric payload was sampled by the sender.
+*
+*				Trace - Optional latency trace, absent (null) unless the message takes part in a trace. It holds the
+*						trace id, the depth of the message in the traced flow, the time the flow started at its
+*						origin (e.g. a sensor reading) and the time of every hop: sent by the participant, enqueued by the message manager, drained from
+*						the queue and handed to a handler. Times are wall clock milliseconds, so hops between hosts
+*						are only as accurate as their clocks are synchronized.
+*
+*				Origin, SendSequence - Identity of one send: a random id of the sending message bus and the
+*						number it gave the send. The message manager stamps them, like the sender id, so every
+*						message manager holds the same identity for the same send and a receiver that reads
+*						from more than one of them can drop the copies (see the class: DuplicateFilter.java).
+*						Both are 0 for messages sent without an identity.
+*
+*				Frozen - Local (non serialized) flag marking a shared constant message. Frozen messages reject
+*						 every setter so one instance can be sent by any number of participants; the sender id
+*						 is stamped by the message manager on its own copy instead.
+*
 * Internal Methods: None
 *
 ******************************************************************************************************************/
@@ -32,11 +54,31 @@ import java.io.Serializable;
 
 public class Message implements Serializable
 {
+	public static final byte NO_VALUE = 0;		// Message carries text only
+	public static final byte FLOAT_VALUE = 1;	// Value holds the raw bits of a float
+	public static final byte DOUBLE_VALUE = 2;	// Value holds the raw bits of a double
+	public static final byte LONG_VALUE = 3;	// Value holds a long
+
+	public static final int TRACE_SENT = 0;		// Hop: posted by the sending participant
+	public static final int TRACE_ENQUEUED = 1;	// Hop: added to the queues by the message manager
+	public static final int TRACE_DRAINED = 2;	// Hop: pulled from the queue by the receiving participant
+	public static final int TRACE_HANDLED = 3;	// Hop: handed to a handler of the receiving participant
+
+	private static final int TRACE_ID = 4;		// Slots of the trace array after the hop times
+	private static final int TRACE_ORIGIN = 5;
+	private static final int TRACE_DEPTH = 6;
 
 	private String MessageText;	// Any string message.
 	private int MessageId;		// Message Id is defined by the participant.
 	private long SenderId;		// Id assigned at registration time by the message manager. The ID for every message is
 								// set by the MessageManagerInterface before the message is sent to the message manager.
+	private byte ValueType = NO_VALUE;	// Type of the primitive payload (see the constants above)
+	private long Value;			// Primitive payload, stored as raw bits for floating point values
+	private long TimeStamp;		// Sample time of the primitive payload in milliseconds
+	private long[] Trace;		// Hop times, trace id and origin time; null if the message is not traced
+	private long Origin;		// Id of the sending message bus, 0 if the send has no identity
+	private long SendSequence;	// Number the sending message bus gave the send
+	private transient boolean Frozen = false;	// True for shared constant messages (never serialized)
 
 	public Message(int MsgId, String Text )
 	{
@@ -52,6 +94,30 @@ public class Message implements Serializable
 
 	} // constructor
 
+	public Message(int MsgId, float Val )
+	{
+		MessageText = null;
+		MessageId = MsgId;
+		SetFloatValue( Val );
+
+	} // constructor
+
+	public Message(int MsgId, double Val )
+	{
+		MessageText = null;
+		MessageId = MsgId;
+		SetDoubleValue( Val );
+
+	} // constructor
+
+	public Message(int MsgId, long Val )
+	{
+		MessageText = null;
+		MessageId = MsgId;
+		SetLongValue( Val );
+
+	} // constructor
+
 	/***************************************************************************
 	* CONCRETE METHOD:: GetSenderID
 	* Purpose: This method returns the ID of the participant that posted this
@@ -85,6 +151,7 @@ public class Message implements Serializable
 
 	public void SetSenderId( long id )
 	{
+		CheckMutable();
 		SenderId = id;
 
 	} // GetSenderId
@@ -127,4 +194,621 @@ public class Message implements Serializable
 
 	} // GetMessage
 
+	/***************************************************************************
+	* CONCRETE METHOD:: GetValueType
+	* Purpose: This method returns the type of the primitive payload, one of
+	*		   NO_VALUE, FLOAT_VALUE, DOUBLE_VALUE or LONG_VALUE.
+	*
+	* Arguments: None
+	*
+	* Returns: byte
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public byte GetValueType()
+	{
+		return ValueType;
+
+	} // GetValueType
+
+	/***************************************************************************
+	* CONCRETE METHOD:: HasValue
+	* Purpose: This method returns true if the message carries a primitive
+	*		   payload in addition to (or instead of) the text.
+	*
+	* Arguments: None
+	*
+	* Returns: boolean
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public boolean HasValue()
+	{
+		return ValueType != NO_VALUE;
+
+	} // HasValue
+
+	/***************************************************************************
+	* CONCRETE METHOD:: SetFloatValue
+	* Purpose: This method stores a float payload and stamps the message with
+	*		   the current time.
+	*
+	* Arguments: float
+	*
+	* Returns: None
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public void SetFloatValue( float Val )
+	{
+		CheckMutable();
+		ValueType = FLOAT_VALUE;
+		Value = Float.floatToRawIntBits( Val );
+		TimeStamp = System.currentTimeMillis();
+
+	} // SetFloatValue
+
+	/***************************************************************************
+	* CONCRETE METHOD:: SetDoubleValue
+	* Purpose: This method stores a double payload and stamps the message with
+	*		   the current time.
+	*
+	* Arguments: double
+	*
+	* Returns: None
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public void SetDoubleValue( double Val )
+	{
+		CheckMutable();
+		ValueType = DOUBLE_VALUE;
+		Value = Double.doubleToRawLongBits( Val );
+		TimeStamp = System.currentTimeMillis();
+
+	} // SetDoubleValue
+
+	/***************************************************************************
+	* CONCRETE METHOD:: SetLongValue
+	* Purpose: This method stores a long payload and stamps the message with
+	*		   the current time.
+	*
+	* Arguments: long
+	*
+	* Returns: None
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public void SetLongValue( long Val )
+	{
+		CheckMutable();
+		ValueType = LONG_VALUE;
+		Value = Val;
+		TimeStamp = System.currentTimeMillis();
+
+	} // SetLongValue
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetFloatValue
+	* Purpose: This method returns the primitive payload as a float, converting
+	*		   from the stored type if necessary. Messages without a primitive
+	*		   payload (e.g. posted by older tools) fall back to parsing the text.
+	*
+	* Arguments: None
+	*
+	* Returns: float
+	*
+	* Exceptions: NumberFormatException if there is no payload and the text is
+	*			  not a number
+	*
+	****************************************************************************/
+
+	public float GetFloatValue()
+	{
+		switch( ValueType )
+		{
+			case FLOAT_VALUE:
+				return Float.intBitsToFloat( (int) Value );
+
+			case DOUBLE_VALUE:
+				return (float) Double.longBitsToDouble( Value );
+
+			case LONG_VALUE:
+				return (float) Value;
+
+		} // switch
+
+		return Float.parseFloat( MessageText );
+
+	} // GetFloatValue
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetDoubleValue
+	* Purpose: This method returns the primitive payload as a double, converting
+	*		   from the stored type if necessary. Messages without a primitive
+	*		   payload fall back to parsing the text.
+	*
+	* Arguments: None
+	*
+	* Returns: double
+	*
+	* Exceptions: NumberFormatException if there is no payload and the text is
+	*			  not a number
+	*
+	****************************************************************************/
+
+	public double GetDoubleValue()
+	{
+		switch( ValueType )
+		{
+			case FLOAT_VALUE:
+				return Float.intBitsToFloat( (int) Value );
+
+			case DOUBLE_VALUE:
+				return Double.longBitsToDouble( Value );
+
+			case LONG_VALUE:
+				return (double) Value;
+
+		} // switch
+
+		return Double.parseDouble( MessageText );
+
+	} // GetDoubleValue
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetLongValue
+	* Purpose: This method returns the primitive payload as a long, converting
+	*		   (truncating) from the stored type if necessary. Messages without a
+	*		   primitive payload fall back to parsing the text.
+	*
+	* Arguments: None
+	*
+	* Returns: long
+	*
+	* Exceptions: NumberFormatException if there is no payload and the text is
+	*			  not a number
+	*
+	****************************************************************************/
+
+	public long GetLongValue()
+	{
+		switch( ValueType )
+		{
+			case FLOAT_VALUE:
+				return (long) Float.intBitsToFloat( (int) Value );
+
+			case DOUBLE_VALUE:
+				return (long) Double.longBitsToDouble( Value );
+
+			case LONG_VALUE:
+				return Value;
+
+		} // switch
+
+		return Long.parseLong( MessageText );
+
+	} // GetLongValue
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetTimeStamp
+	* Purpose: This method returns the time (in milliseconds) at which the
+	*		   primitive payload was set. It is 0 for text only messages.
+	*
+	* Arguments: None
+	*
+	* Returns: long
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public long GetTimeStamp()
+	{
+		return TimeStamp;
+
+	} // GetTimeStamp
+
+	/***************************************************************************
+	* CONCRETE METHOD:: SetTimeStamp
+	* Purpose: This method overrides the sample time of the primitive payload.
+	*
+	* Arguments: long - time in milliseconds
+	*
+	* Returns: None
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public void SetTimeStamp( long Time )
+	{
+		CheckMutable();
+		TimeStamp = Time;
+
+	} // SetTimeStamp
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetOrigin
+	* Purpose: This method returns the id of the message bus that sent this
+	*		   message, 0 if it was sent without an identity.
+	*
+	* Arguments: None
+	*
+	* Returns: long
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public long GetOrigin()
+	{
+		return Origin;
+
+	} // GetOrigin
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetSendSequence
+	* Purpose: This method returns the number the sending message bus gave the
+	*		   send of this message.
+	*
+	* Arguments: None
+	*
+	* Returns: long
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public long GetSendSequence()
+	{
+		return SendSequence;
+
+	} // GetSendSequence
+
+	/***************************************************************************
+	* CONCRETE METHOD:: SetSendSequence
+	* Purpose: This method sets the identity of the send. The message manager
+	*		   calls it on the copy it receives.
+	*
+	* Arguments: long - id of the sending message bus
+	*			 long - number of the send
+	*
+	* Returns: None
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public void SetSendSequence( long Origin, long Sequence )
+	{
+		CheckMutable();
+		this.Origin = Origin;
+		SendSequence = Sequence;
+
+	} // SetSendSequence
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetValueText
+	* Purpose: This method returns a printable form of the payload: the text if
+	*		   there is no primitive payload, otherwise the value formatted
+	*		   according to its type. Intended for diagnostics, not hot paths.
+	*
+	* Arguments: None
+	*
+	* Returns: String
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public String GetValueText()
+	{
+		switch( ValueType )
+		{
+			case FLOAT_VALUE:
+				return String.valueOf( GetFloatValue() );
+
+			case DOUBLE_VALUE:
+				return String.valueOf( GetDoubleValue() );
+
+			case LONG_VALUE:
+				return String.valueOf( Value );
+
+		} // switch
+
+		return MessageText;
+
+	} // GetValueText
+
+	/***************************************************************************
+	* CONCRETE METHOD:: StartTrace
+	* Purpose: This method makes the message the origin of a new trace. The
+	*		   origin time is the current time.
+	*
+	* Arguments: long - trace id, unique among the traces in the system
+	*
+	* Returns: None
+	*
+	* Exceptions: UnsupportedOperationException if the message is frozen
+	*
+	****************************************************************************/
+
+	public void StartTrace( long TraceId )
+	{
+		CheckMutable();
+		Trace = new long[ TRACE_DEPTH + 1 ];
+		Trace[ TRACE_ID ] = TraceId;
+		Trace[ TRACE_ORIGIN ] = System.currentTimeMillis();
+
+	} // StartTrace
+
+	/***************************************************************************
+	* CONCRETE METHOD:: FollowTrace
+	* Purpose: This method joins the message to the trace of the message that
+	*		   caused it (e.g. a command sent because of a reading), keeping the
+	*		   trace id and origin time and increasing the depth by one. Nothing
+	*		   happens if the cause is not traced.
+	*
+	* Arguments: Message - the message that caused this one
+	*
+	* Returns: None
+	*
+	* Exceptions: UnsupportedOperationException if the message is frozen
+	*
+	****************************************************************************/
+
+	public void FollowTrace( Message Cause )
+	{
+		CheckMutable();
+		if ( Cause.Trace == null )
+		{
+			return;
+
+		} // if
+
+		Trace = new long[ TRACE_DEPTH + 1 ];
+		Trace[ TRACE_ID ] = Cause.Trace[ TRACE_ID ];
+		Trace[ TRACE_ORIGIN ] = Cause.Trace[ TRACE_ORIGIN ];
+		Trace[ TRACE_DEPTH ] = Cause.Trace[ TRACE_DEPTH ] + 1;
+
+	} // FollowTrace
+
+	/***************************************************************************
+	* CONCRETE METHOD:: IsTraced
+	* Purpose: This method returns true if the message takes part in a trace.
+	*
+	* Arguments: None
+	*
+	* Returns: boolean
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public boolean IsTraced()
+	{
+		return Trace != null;
+
+	} // IsTraced
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetTraceId
+	* Purpose: This method returns the trace id, or 0 if the message is not
+	*		   traced.
+	*
+	* Arguments: None
+	*
+	* Returns: long
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public long GetTraceId()
+	{
+		return Trace == null ? 0 : Trace[ TRACE_ID ];
+
+	} // GetTraceId
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetTraceOrigin
+	* Purpose: This method returns the time (in milliseconds) at which the trace
+	*		   started, or 0 if the message is not traced.
+	*
+	* Arguments: None
+	*
+	* Returns: long
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public long GetTraceOrigin()
+	{
+		return Trace == null ? 0 : Trace[ TRACE_ORIGIN ];
+
+	} // GetTraceOrigin
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetTraceDepth
+	* Purpose: This method returns the number of messages between the origin of
+	*		   the trace and this message: 0 for the origin itself, 1 for a
+	*		   message caused by the origin, and so on.
+	*
+	* Arguments: None
+	*
+	* Returns: int
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public int GetTraceDepth()
+	{
+		return Trace == null ? 0 : (int) Trace[ TRACE_DEPTH ];
+
+	} // GetTraceDepth
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetTraceTime
+	* Purpose: This method returns the time (in milliseconds) of a hop, or 0 if
+	*		   the message is not traced or has not passed the hop yet.
+	*
+	* Arguments: int - hop, one of TRACE_SENT, TRACE_ENQUEUED, TRACE_DRAINED or
+	*			 TRACE_HANDLED
+	*
+	* Returns: long
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public long GetTraceTime( int Hop )
+	{
+		return Trace == null ? 0 : Trace[ Hop ];
+
+	} // GetTraceTime
+
+	/***************************************************************************
+	* CONCRETE METHOD:: SetTraceTime
+	* Purpose: This method records the time of a hop. Nothing happens if the
+	*		   message is not traced, so callers need not check first.
+	*
+	* Arguments: int - hop, one of TRACE_SENT, TRACE_ENQUEUED, TRACE_DRAINED or
+	*			 TRACE_HANDLED
+	*			 long - time in milliseconds
+	*
+	* Returns: None
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public void SetTraceTime( int Hop, long Time )
+	{
+		if ( Trace != null )
+		{
+			Trace[ Hop ] = Time;
+
+		} // if
+
+	} // SetTraceTime
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Freeze
+	* Purpose: This method marks the message as a shared constant. After this
+	*		   call every setter throws, so the instance can safely be reused by
+	*		   all participants in a process. The flag is not serialized, so the
+	*		   copy received by the message manager is an ordinary message.
+	*
+	* Arguments: None
+	*
+	* Returns: Message - this message, for use in constant initializers
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public Message Freeze()
+	{
+		Frozen = true;
+		return this;
+
+	} // Freeze
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Copy
+	* Purpose: This method returns an ordinary (not frozen) copy of the message,
+	*		   for senders that hand a message to other threads while the caller
+	*		   is free to recycle the original.
+	*
+	* Arguments: None
+	*
+	* Returns: Message
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public Message Copy()
+	{
+		Message m = new Message( MessageId, MessageText );
+		m.SenderId = SenderId;
+		m.ValueType = ValueType;
+		m.Value = Value;
+		m.TimeStamp = TimeStamp;
+		m.Trace = ( Trace == null ) ? null : Trace.clone();
+		m.Origin = Origin;
+		m.SendSequence = SendSequence;
+		return m;
+
+	} // Copy
+
+	/***************************************************************************
+	* CONCRETE METHOD:: IsFrozen
+	* Purpose: This method returns true if the message is a shared constant.
+	*
+	* Arguments: None
+	*
+	* Returns: boolean
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public boolean IsFrozen()
+	{
+		return Frozen;
+
+	} // IsFrozen
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Recycle
+	* Purpose: This method clears all fields so that the message can be handed
+	*		   out again by the MessagePool.
+	*
+	* Arguments: int - the new message id
+	*
+	* Returns: None
+	*
+	* Exceptions: UnsupportedOperationException if the message is frozen
+	*
+	****************************************************************************/
+
+	void Recycle( int MsgId )
+	{
+		CheckMutable();
+		MessageId = MsgId;
+		MessageText = null;
+		SenderId = 0;
+		ValueType = NO_VALUE;
+		Value = 0;
+		TimeStamp = 0;
+		Trace = null;
+		Origin = 0;
+		SendSequence = 0;
+
+	} // Recycle
+
+	private void CheckMutable()
+	{
+		if ( Frozen )
+		{
+			throw new UnsupportedOperationException( "Message " + MessageId + " is a shared constant and cannot be modified" );
+
+		} // if
+
+	} // CheckMutable
+
 } // Message class
\ No newline at end of file
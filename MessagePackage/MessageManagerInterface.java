@@ -276,7 +276,10 @@ public class MessageManagerInterface {
 
     /***************************************************************************
      * CONCRETE METHOD:: SendMessage
-     * Purpose: This method sends an message to the message manager.
+     * Purpose: This method sends an message to the message manager. The message
+     * itself is not modified: the participant id travels as a separate argument
+     * and is stamped by the message manager, so shared constant messages can be
+     * sent from any number of participants.
      *
      * Arguments: Message object.
      *
@@ -289,8 +292,7 @@ public class MessageManagerInterface {
     public void SendMessage(Message evt) throws ParticipantNotRegisteredException, SendMessageException {
         if (ParticipantId != -1) {
             try {
-                evt.SetSenderId(ParticipantId);
-                em.SendMessage(evt);
+                em.SendMessage(ParticipantId, evt);
 
             } // try
 
@@ -307,6 +309,112 @@ public class MessageManagerInterface {
 
     } // SendMessage
 
+    /***************************************************************************
+     * CONCRETE METHOD:: SendMessages
+     * Purpose: This method sends a batch of messages to the message manager with
+     * one remote call. They are posted in array order.
+     *
+     * Arguments: Message array.
+     *
+     * Returns: None.
+     *
+     * Exceptions: ParticipantNotRegisteredException, SendMessageException
+     *
+     ****************************************************************************/
+
+    public void SendMessages(Message[] Messages) throws ParticipantNotRegisteredException, SendMessageException {
+        if (ParticipantId != -1) {
+            try {
+                em.SendMessages(ParticipantId, Messages);
+
+            } // try
+
+            catch (Exception e) {
+                throw new SendMessageException("Error sending messages" + e);
+
+            } // catch
+
+        } else {
+
+            throw new ParticipantNotRegisteredException("Participant not registered");
+
+        } // if
+
+    } // SendMessages
+
+    /***************************************************************************
+     * CONCRETE METHOD:: SendMessage
+     * Purpose: This method is SendMessage for a send with an identity: the id of
+     * the sending message bus and the number it gave the send. Like the
+     * participant id, they are stamped by the message manager.
+     *
+     * Arguments:
+     * Message object.
+     * long - id of the sending message bus
+     * long - number of the send
+     *
+     * Returns: None.
+     *
+     * Exceptions: ParticipantNotRegisteredException, SendMessageException
+     *
+     ****************************************************************************/
+
+    public void SendMessage(Message evt, long Origin, long Sequence) throws ParticipantNotRegisteredException, SendMessageException {
+        if (ParticipantId != -1) {
+            try {
+                em.SendMessage(ParticipantId, Origin, Sequence, evt);
+
+            } // try
+
+            catch (Exception e) {
+                throw new SendMessageException("Error sending message" + e);
+
+            } // catch
+
+        } else {
+
+            throw new ParticipantNotRegisteredException("Participant not registered");
+
+        } // if
+
+    } // SendMessage
+
+    /***************************************************************************
+     * CONCRETE METHOD:: SendMessages
+     * Purpose: This method is SendMessages for a batch of sends with an
+     * identity. The messages are numbered from FirstSequence on, in array order.
+     *
+     * Arguments:
+     * Message array.
+     * long - id of the sending message bus
+     * long - number of the first send
+     *
+     * Returns: None.
+     *
+     * Exceptions: ParticipantNotRegisteredException, SendMessageException
+     *
+     ****************************************************************************/
+
+    public void SendMessages(Message[] Messages, long Origin, long FirstSequence) throws ParticipantNotRegisteredException, SendMessageException {
+        if (ParticipantId != -1) {
+            try {
+                em.SendMessages(ParticipantId, Origin, FirstSequence, Messages);
+
+            } // try
+
+            catch (Exception e) {
+                throw new SendMessageException("Error sending messages" + e);
+
+            } // catch
+
+        } else {
+
+            throw new ParticipantNotRegisteredException("Participant not registered");
+
+        } // if
+
+    } // SendMessages
+
     /***************************************************************************
      * CONCRETE METHOD:: GetMessage
      * Purpose: This method sends an message to the message manager.
@@ -343,6 +451,166 @@ public class MessageManagerInterface {
 
     } // GetMessageQueue
 
+    /***************************************************************************
+     * CONCRETE METHOD:: GetMessageQueue
+     * Purpose: This method gets the messages of the participant's queue from a
+     * sequence number on and clears the queue (see the class: MessageQueue.java).
+     *
+     * Arguments: long sequence number of the first message to return.
+     *
+     * Returns: MessageQueue object.
+     *
+     * Exceptions: ParticipantNotRegisteredException, GetMessageException
+     *
+     ****************************************************************************/
+
+    public MessageQueue GetMessageQueue(long Sequence) throws ParticipantNotRegisteredException, GetMessageException {
+        if (ParticipantId != -1) {
+            try {
+                return em.GetMessageQueue(ParticipantId, Sequence);
+
+            } // try
+
+            catch (Exception e) {
+                throw new GetMessageException("Error getting message" + e);
+
+            } // catch
+
+        } else {
+
+            throw new ParticipantNotRegisteredException("Participant not registered");
+
+        } // if
+
+    } // GetMessageQueue
+
+    /***************************************************************************
+     * CONCRETE METHOD:: TruncateMessageQueue
+     * Purpose: This method discards the messages of the participant's queue that
+     * precede a sequence number. No message is transferred.
+     *
+     * Arguments: long sequence number of the first message to keep.
+     *
+     * Returns: long sequence number the next message of the queue will get.
+     *
+     * Exceptions: ParticipantNotRegisteredException, GetMessageException
+     *
+     ****************************************************************************/
+
+    public long TruncateMessageQueue(long Sequence) throws ParticipantNotRegisteredException, GetMessageException {
+        long next;
+
+        if (ParticipantId != -1) {
+            try {
+                next = em.TruncateMessageQueue(ParticipantId, Sequence);
+
+            } // try
+
+            catch (Exception e) {
+                throw new GetMessageException("Error truncating message queue" + e);
+
+            } // catch
+
+        } else {
+
+            throw new ParticipantNotRegisteredException("Participant not registered");
+
+        } // if
+
+        if (next < 0) throw new ParticipantNotRegisteredException("Participant not registered");
+
+        return next;
+
+    } // TruncateMessageQueue
+
+    /***************************************************************************
+     * CONCRETE METHOD:: HeartBeat
+     * Purpose: This method reports to the message manager that the participant
+     * is alive. The heart beat updates the membership state of the message
+     * manager and is not delivered to any message queue.
+     *
+     * Arguments: String participant type.
+     *
+     * Returns: long - heart beat interval requested by the message manager in
+     * milliseconds, 0 if the message manager does not know the participant.
+     *
+     * Exceptions: ParticipantNotRegisteredException, SendMessageException
+     *
+     ****************************************************************************/
+
+    public long HeartBeat(String Type) throws ParticipantNotRegisteredException, SendMessageException {
+        if (ParticipantId != -1) {
+            try {
+                return em.HeartBeat(ParticipantId, Type);
+
+            } // try
+
+            catch (Exception e) {
+                throw new SendMessageException("Error sending heart beat" + e);
+
+            } // catch
+
+        } else {
+
+            throw new ParticipantNotRegisteredException("Participant not registered");
+
+        } // if
+
+    } // HeartBeat
+
+    /***************************************************************************
+     * CONCRETE METHOD:: GetMembership
+     * Purpose: This method gets the participants that sent a heart beat or
+     * unregistered after a membership version.
+     *
+     * Arguments: long membership version returned by the previous call, 0 for a
+     * snapshot of every live participant.
+     *
+     * Returns: Membership object.
+     *
+     * Exceptions: GetMessageException
+     *
+     ****************************************************************************/
+
+    public Membership GetMembership(long Version) throws GetMessageException {
+        try {
+            return em.GetMembership(Version);
+
+        } // try
+
+        catch (Exception e) {
+            throw new GetMessageException("Error getting membership" + e);
+
+        } // catch
+
+    } // GetMembership
+
+    /***************************************************************************
+     * CONCRETE METHOD:: GetReaderCount
+     * Purpose: This method gets the number of participants that use the message
+     * manager as their main one, a measure of its poll load.
+     *
+     * Arguments: None.
+     *
+     * Returns: int number of participants.
+     *
+     * Exceptions: GetMessageException
+     *
+     ****************************************************************************/
+
+    public int GetReaderCount() throws GetMessageException {
+        try {
+            return em.GetReaderCount();
+
+        } // try
+
+        catch (Exception e) {
+            throw new GetMessageException("Error getting reader count" + e);
+
+        } // catch
+
+    } // GetReaderCount
+
     /***************************************************************************
      * CONCRETE METHOD:: UnRegister
      * Purpose: This method is called when the object is no longer used. Essentially
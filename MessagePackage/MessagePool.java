@@ -0,0 +1,92 @@
+package MessagePackage;
+
+/**
+ * Description:
+ * This class is a bounded free list of recyclable messages for variable content such as sensor readings.
+ * A sender acquires a message, fills in its payload, sends it and releases it again; because
+ * MessageManagerInterface.SendMessage serializes the message before it returns, the instance can be
+ * reused straight away. Messages that are still referenced after release must not be released.
+ * Notice that in a single process there is only one shared instance of MessagePool
+ */
+public class MessagePool {
+    private static final int DEFAULT_CAPACITY = 64;
+    private static MessagePool instance = null;
+
+    private final Message[] freeList;
+    private int freeCount = 0;
+
+    public MessagePool(int capacity) {
+        freeList = new Message[capacity];
+    }
+
+    /***************************************************************************
+     * Purpose: Users of this class get the shared pool by this method
+     *
+     * Arguments: None.
+     *
+     * Returns: MessagePool.
+     *
+     ****************************************************************************/
+    public static synchronized MessagePool getInstance() {
+        if (instance == null) {
+            instance = new MessagePool(DEFAULT_CAPACITY);
+        }
+
+        return instance;
+    }
+
+    /***************************************************************************
+     * Purpose: Take a cleared message out of the pool, or create one if the pool is empty
+     *
+     * Arguments: int - message id of the returned message.
+     *
+     * Returns: Message.
+     *
+     ****************************************************************************/
+    public Message acquire(int messageId) {
+        Message m = null;
+
+        synchronized (this) {
+            if (freeCount > 0) {
+                m = freeList[--freeCount];
+                freeList[freeCount] = null;
+            }
+        }
+
+        if (m == null) return new Message(messageId);
+
+        m.Recycle(messageId);
+        return m;
+    }
+
+    /***************************************************************************
+     * Purpose: Give a message back to the pool. Frozen constants are ignored and
+     * messages beyond the pool capacity are left to the garbage collector.
+     *
+     * Arguments: Message - a message previously obtained from acquire.
+     *
+     * Returns: None.
+     *
+     ****************************************************************************/
+    public void release(Message m) {
+        if (m == null || m.IsFrozen()) return;
+
+        synchronized (this) {
+            if (freeCount < freeList.length) {
+                freeList[freeCount++] = m;
+            }
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: Number of idle messages currently held by the pool
+     *
+     * Arguments: None.
+     *
+     * Returns: int.
+     *
+     ****************************************************************************/
+    public synchronized int size() {
+        return freeCount;
+    }
+}
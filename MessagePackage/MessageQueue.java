@@ -9,11 +9,15 @@
 * Description: This class defines message queues which are stored by the MessageManger. Each registered participant
 *			   has an message queue assigned to them. As events are sent by registered participants to the MessageManger
 *			   they are posted in each queue. Queues are removed when participants unregister.
+*			   Every message added to a queue is given the next sequence number of the queue, so a
+*			   participant can read a queue from a sequence number on and discard the messages before
+*			   one, as it does with the queues of its standby message managers.
 *
 * Parameters:
 *			   MessageList - This is the list of message objects
 *			   id - this is the participant's registration id
 *			   ListSize - this variable indicates how many events are in the message queue.
+*			   FirstSequence - this is the sequence number of the oldest message in the list.
 *
 * Internal Methods: None
 *
@@ -28,6 +32,7 @@ public class MessageQueue implements Serializable
 	private Vector<Message> MessageList;// This is the list of events associated with a participant
 	private long QueueId;				// This is the participants id
 	private	int ListSize;				// This is the size of the list
+	private long FirstSequence = 0;		// This is the sequence number of the oldest message in the list
 
 	public MessageQueue()
 	{
@@ -38,6 +43,14 @@ public class MessageQueue implements Serializable
 
 	} // constructor
 
+	public MessageQueue( long Id )
+	{
+		MessageList = new Vector<Message> (15, 1);
+		QueueId = Id;
+		ListSize = 0;
+
+	} // constructor
+
 	/***************************************************************************
 	* CONCRETE METHOD:: GetId
 	* Purpose: This method returns the message queue id (which is the participants id).
@@ -116,6 +129,7 @@ public class MessageQueue implements Serializable
 		{
 			m = MessageList.get(0);
 			MessageList.removeElementAt(0);
+			FirstSequence++;
 
 		} // if
 
@@ -137,10 +151,81 @@ public class MessageQueue implements Serializable
 
 	public void ClearMessageQueue()
 	{
+		FirstSequence += MessageList.size();
 		MessageList.removeAllElements();
 
 	} // ClearMessageQueue
 
+	/***************************************************************************
+	* CONCRETE METHOD:: DrainTo
+	* Purpose: This method moves all the messages of the queue, oldest first, to
+	*		   the end of a collection and clears the queue. Unlike a loop of
+	*		   GetMessage calls it does not shift the list once per message.
+	*
+	* Arguments: Collection the messages are added to
+	*
+	* Returns: int number of messages moved
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public int DrainTo( Collection<? super Message> Target )
+	{
+		int Count = MessageList.size();
+
+		Target.addAll( MessageList );
+		ClearMessageQueue();
+
+		return Count;
+
+	} // DrainTo
+
+	/***************************************************************************
+	* CONCRETE METHOD:: GetNextSequence
+	* Purpose: This method returns the sequence number the next message added
+	*		   to the queue will get. It equals the number of messages ever added.
+	*
+	* Arguments: None
+	*
+	* Returns: long integer
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public long GetNextSequence()
+	{
+		return FirstSequence + MessageList.size();
+
+	} // GetNextSequence
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Truncate
+	* Purpose: This method removes the messages whose sequence number is lower
+	*		   than the given one from the front of the list.
+	*
+	* Arguments: long integer sequence number
+	*
+	* Returns: None
+	*
+	* Exceptions: None
+	*
+	****************************************************************************/
+
+	public void Truncate( long Sequence )
+	{
+		int Count = (int) Math.min( MessageList.size(), Math.max( 0, Sequence - FirstSequence ) );
+
+		if (Count > 0)
+		{
+			MessageList.subList( 0, Count ).clear();
+			FirstSequence += Count;
+
+		} // if
+
+	} // Truncate
+
 	/***************************************************************************
 	* CONCRETE METHOD:: GetCopy
 	* Purpose: This method is used to obtain a copy of the message queue. This
@@ -161,6 +246,7 @@ public class MessageQueue implements Serializable
 	{
 		MessageQueue mq = new MessageQueue();
 		mq.QueueId = QueueId;
+		mq.FirstSequence = FirstSequence;
 		mq.MessageList = (Vector<Message>) MessageList.clone();
 
 		return mq ;
@@ -66,6 +66,79 @@ public interface RMIMessageManagerInterface extends Remote
 
 	public void SendMessage(Message m ) throws java.rmi.RemoteException;
 
+	/***************************************************************************
+	* INTERFACE:: SendMessage
+	* Purpose: This interface is used by participant to access the message sending
+	* 		   service on the MessageManager. The message manager stamps the sender
+	*		   id on the copy it receives, so the participant never has to modify
+	*		   the message it sends (which may be a shared constant).
+	*
+	* Arguments: long integer registration number
+	*			 Message object (see the class: Message.java)
+	*
+	* Returns: None
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public void SendMessage(long SenderID, Message m ) throws java.rmi.RemoteException;
+
+	/***************************************************************************
+	* INTERFACE:: SendMessages
+	* Purpose: This interface is used by participant to send a batch of messages
+	* 		   with one call. The messages are posted in order, each stamped with
+	*		   the sender id like SendMessage(SenderID, m).
+	*
+	* Arguments: long integer registration number
+	*			 Message array (see the class: Message.java)
+	*
+	* Returns: None
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public void SendMessages(long SenderID, Message[] Messages ) throws java.rmi.RemoteException;
+
+	/***************************************************************************
+	* INTERFACE:: SendMessage
+	* Purpose: This interface is SendMessage(SenderID, m) for a send with an
+	* 		   identity. The message manager stamps the identity on its copy, so
+	*		   every message manager the send goes to holds the same one.
+	*
+	* Arguments: long integer registration number
+	*			 long integer id of the sending message bus
+	*			 long integer number of the send
+	*			 Message object (see the class: Message.java)
+	*
+	* Returns: None
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public void SendMessage(long SenderID, long Origin, long Sequence, Message m ) throws java.rmi.RemoteException;
+
+	/***************************************************************************
+	* INTERFACE:: SendMessages
+	* Purpose: This interface is SendMessages(SenderID, Messages) for a batch
+	* 		   of sends with an identity. The messages are numbered from the
+	*		   given sequence number on, in array order.
+	*
+	* Arguments: long integer registration number
+	*			 long integer id of the sending message bus
+	*			 long integer number of the first send
+	*			 Message array (see the class: Message.java)
+	*
+	* Returns: None
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public void SendMessages(long SenderID, long Origin, long FirstSequence, Message[] Messages ) throws java.rmi.RemoteException;
+
 	/***************************************************************************
 	* INTERFACE:: GetMessage
 	* Purpose: This interface is used to allow the participant access the message
@@ -81,4 +154,86 @@ public interface RMIMessageManagerInterface extends Remote
 
 	public MessageQueue GetMessageQueue(long SenderID) throws java.rmi.RemoteException;
 
+	/***************************************************************************
+	* INTERFACE:: GetMessage
+	* Purpose: This interface is used to allow the participant access the message
+	*		   queue on the MessageManager from a sequence number on. It is used
+	*		   when a standby message manager takes over as the main one.
+	*
+	* Arguments: long integer registration number
+	*			 long integer sequence number of the first message to return
+	*
+	* Returns: MessageQueue object (see the class: MessageQueue.java)
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public MessageQueue GetMessageQueue(long SenderID, long Sequence) throws java.rmi.RemoteException;
+
+	/***************************************************************************
+	* INTERFACE:: TruncateMessageQueue
+	* Purpose: This interface is used to discard the messages of the participant's
+	*		   queue that precede a sequence number, without transferring any.
+	*
+	* Arguments: long integer registration number
+	*			 long integer sequence number of the first message to keep
+	*
+	* Returns: long integer sequence number the next message of the queue will
+	*		   get, -1 if the participant is not registered
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public long TruncateMessageQueue(long SenderID, long Sequence) throws java.rmi.RemoteException;
+
+	/***************************************************************************
+	* INTERFACE:: HeartBeat
+	* Purpose: This interface is used by participants to report that they are
+	*		   alive. The message manager records the heart beat in its membership
+	*		   state instead of posting it to every message queue.
+	*
+	* Arguments: long integer registration number
+	*			 String participant type
+	*
+	* Returns: long - heart beat interval requested from the participant in
+	*		   milliseconds, 0 if the participant is not registered
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public long HeartBeat(long SenderID, String Type) throws java.rmi.RemoteException;
+
+	/***************************************************************************
+	* INTERFACE:: GetMembership
+	* Purpose: This interface is used to query the participants that sent a heart
+	*		   beat or unregistered after a given membership version
+	*
+	* Arguments: long integer membership version, 0 for a snapshot
+	*
+	* Returns: Membership object (see the class: Membership.java)
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public Membership GetMembership(long Version) throws java.rmi.RemoteException;
+
+	/***************************************************************************
+	* INTERFACE:: GetReaderCount
+	* Purpose: This interface is used to query how many participants poll their
+	*		   queue on the MessageManager, i.e. use it as their main one
+	*
+	* Arguments: None
+	*
+	* Returns: integer number of participants
+	*
+	* Exceptions: RemoteException
+	*
+	****************************************************************************/
+
+	public int GetReaderCount() throws java.rmi.RemoteException;
+
 } // class
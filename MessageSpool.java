@@ -0,0 +1,420 @@
+import MessagePackage.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description:
+ * This class is the store-and-forward outbox of a MessageBus: an append-only log of messages in a memory-mapped
+ * file of fixed size, kept while no message channel is alive and forwarded, oldest first, once one recovers.
+ * Each record is a state byte, a sequence number, the time it was spooled, a control flag, a body length and the
+ * message (ID, primitive payload, sample time and text; traces are not kept). The state byte is written last, so a record torn by a crash is not read
+ * back, and a zero state byte marks the end of the log.
+ * Forwarded records are only marked as dropped. When an append does not fit, the oldest records with the ID of the
+ * new message are dropped first, then the oldest of any ID, until an eighth of the file is free, and the live
+ * records are moved to the front of the file. A flood of one kind of message (e.g. readings) thus ages out its
+ * own oldest records instead of the rare ones (e.g. commands).
+ * A spool opened by claim() outlives its process: the file is locked while the process runs, and the next process
+ * that claims the same name reads back the records left in it, less the stale ones: control messages (the frozen
+ * commands of ControlMessages, which must not be acted on after the fact) and records older than a given age.
+ * This class is thread safe.
+ */
+public class MessageSpool {
+    private static final byte END = 0;
+    private static final byte LIVE = 1;
+    private static final byte DROPPED = 2;
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 1 + 4;  // state, sequence, spool time, control, body length
+    private static final int FIXED_BODY_SIZE = 4 + 1 + 8 + 8 + 4;  // ID, value type, value, time stamp, text length
+    private static final int MAX_SLOTS = 64;    // files of one name, e.g. the participants of one type on a host
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int end = 0;                // where the next record is written
+    private long nextSequence = 1;
+    private int liveCount = 0;
+    private int liveBytes = 0;
+    private ArrayDeque<Integer> order;  // positions of the records, oldest first; dropped ones are skipped lazily
+    private Map<Integer, ArrayDeque<Integer>> positionsById;
+    private final File file;
+    private RandomAccessFile raf;       // kept open with the lock only
+    private FileLock lock;              // held while the process runs if the spool was claimed, otherwise null
+    private boolean closed = false;
+
+    /***************************************************************************
+     * Purpose: Open a spool file, creating or growing it to the given size. The
+     * records a previous process left in it are kept.
+     *
+     * Arguments:
+     * File - spool file
+     * int - size of the file in bytes
+     *
+     * Exceptions: IOException if the file cannot be mapped.
+     *
+     ****************************************************************************/
+    public MessageSpool(File file, int capacity) throws IOException {
+        this(file, new RandomAccessFile(file, "rw"), null, capacity);
+    }
+
+    /***************************************************************************
+     * Purpose: Open the first spool file of a name that no other process (nor
+     * spool of this one) holds: name-0.spool, name-1.spool and so on. Processes
+     * of the same name thus each get a file of their own, and a process started
+     * again after a crash takes over the file one of them left. Of the records
+     * left in it, the control messages and those spooled more than maxAge ago
+     * are dropped.
+     *
+     * Arguments:
+     * File - directory of the spool files
+     * String - name, e.g. the participant type
+     * int - size of the file in bytes
+     * long - age in milliseconds after which a record left in the file is dropped
+     *
+     * Returns: MessageSpool, holding the records left in the file that are still fresh.
+     *
+     * Exceptions: IOException if every file of the name is held or none can be mapped.
+     *
+     ****************************************************************************/
+    public static MessageSpool claim(File directory, String name, int capacity, long maxAge) throws IOException {
+        for (int slot = 0; slot < MAX_SLOTS; slot++) {
+            File file = new File(directory, name + "-" + slot + ".spool");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            FileLock lock;
+            try {
+                lock = raf.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;    // held by another spool of this process
+            }
+            if (lock != null) {
+                MessageSpool spool = new MessageSpool(file, raf, lock, capacity);
+                spool.dropStale(System.currentTimeMillis() - maxAge);
+                return spool;
+            }
+            raf.close();
+        }
+        throw new IOException("every spool file of " + name + " is in use");
+    }
+
+    /**
+     * Map the file; it stays open only to keep the lock, the mapping does not need it
+     */
+    private MessageSpool(File file, RandomAccessFile raf, FileLock lock, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.lock = lock;
+        try {
+            if (raf.length() < capacity) raf.setLength(capacity);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } finally {
+            if (lock == null || buffer == null) raf.close();
+            else this.raf = raf;
+        }
+        order = new ArrayDeque<>();
+        positionsById = new HashMap<>();
+        scan();
+    }
+
+    /***************************************************************************
+     * Purpose: Add a message at the end of the log, making room as described
+     * above if the file is full
+     *
+     * Arguments: Message - message to keep
+     *
+     * Returns: boolean - false if the message alone is larger than the file, or
+     * the spool was closed.
+     *
+     ****************************************************************************/
+    public synchronized boolean append(Message m) {
+        if (closed) return false;
+
+        byte[] text = m.GetMessage() == null ? null : m.GetMessage().getBytes(StandardCharsets.UTF_8);
+        int size = HEADER_SIZE + FIXED_BODY_SIZE + (text == null ? 0 : text.length);
+        if (size + 1 > capacity) return false;
+
+        if (end + size + 1 > capacity) makeRoom(m.GetMessageId(), size + 1);
+
+        int position = end;
+        int body = position + HEADER_SIZE;
+        buffer.putLong(position + 1, nextSequence++);
+        buffer.putLong(position + 9, System.currentTimeMillis());
+        buffer.put(position + 17, (byte) (m.IsFrozen() ? 1 : 0));
+        buffer.putInt(position + 18, size - HEADER_SIZE);
+        buffer.putInt(body, m.GetMessageId());
+        buffer.put(body + 4, m.GetValueType());
+        buffer.putLong(body + 5, valueBits(m));
+        buffer.putLong(body + 13, m.GetTimeStamp());
+        buffer.putInt(body + 21, text == null ? -1 : text.length);
+        if (text != null) buffer.put(body + FIXED_BODY_SIZE, text);
+
+        end = position + size;
+        buffer.put(end, END);
+        buffer.put(position, LIVE);
+
+        index(position, m.GetMessageId());
+        return true;
+    }
+
+    /***************************************************************************
+     * Purpose: Read the oldest live messages without removing them
+     *
+     * Arguments:
+     * int - maximum number of messages
+     * List<Message> - list the messages are added to, oldest first
+     *
+     * Returns: long - sequence number of the last message read, to be passed to
+     * removeThrough once they were forwarded; 0 if the spool is empty.
+     *
+     ****************************************************************************/
+    public synchronized long peek(int max, List<Message> messages) {
+        if (closed) return 0;
+
+        long last = 0;
+        int count = 0;
+        for (Iterator<Integer> it = order.iterator(); it.hasNext() && count < max; ) {
+            int position = it.next();
+            if (buffer.get(position) != LIVE) continue;
+
+            messages.add(read(position));
+            last = buffer.getLong(position + 1);
+            count++;
+        }
+        return last;
+    }
+
+    /***************************************************************************
+     * Purpose: Drop the live messages up to a sequence number, i.e. the ones a
+     * peek returned
+     *
+     * Arguments: long - sequence number returned by peek
+     *
+     * Returns: None.
+     *
+     ****************************************************************************/
+    public synchronized void removeThrough(long sequence) {
+        if (closed) return;
+
+        while (!order.isEmpty()) {
+            int position = order.peek();
+            if (buffer.get(position) == LIVE) {
+                if (buffer.getLong(position + 1) > sequence) break;
+                drop(position);
+            }
+            order.poll();
+        }
+
+        if (liveCount == 0) clear();
+    }
+
+    /***************************************************************************
+     * Purpose: Unmap the file and release its lock. The file is deleted unless
+     * it was claimed and still holds records for the next process of the name.
+     * The spool takes no message after this.
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     ****************************************************************************/
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+
+        boolean keep = lock != null && liveCount > 0;
+        liveCount = 0;
+        order.clear();
+        positionsById.clear();
+        unmap(buffer);
+        buffer = null;
+        if (raf != null) {
+            try {
+                raf.close();    // releases the lock too
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!keep) file.delete();
+    }
+
+    public synchronized boolean isEmpty() {
+        return liveCount == 0;
+    }
+
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /**
+     * Drop the control messages and the records spooled before the given time, left by a previous process
+     */
+    private void dropStale(long oldest) {
+        for (int position : order) {
+            if (buffer.get(position + 17) != 0 || buffer.getLong(position + 9) < oldest) drop(position);
+        }
+
+        if (liveCount == 0) clear();
+        else compact();
+    }
+
+    /**
+     * Drop the oldest records of the given message ID, then the oldest of any ID, until the needed space and an
+     * eighth of the file are free, then move the live records to the front
+     */
+    private void makeRoom(int messageId, int needed) {
+        int target = Math.max(needed, capacity / 8);
+        int free = capacity - liveBytes;
+
+        ArrayDeque<Integer> sameId = positionsById.get(messageId);
+        while (free < target && sameId != null && !sameId.isEmpty()) {
+            int position = sameId.poll();
+            if (buffer.get(position) != LIVE) continue;
+            free += recordSize(position);
+            drop(position);
+        }
+
+        while (free < target && !order.isEmpty()) {
+            int position = order.poll();
+            if (buffer.get(position) != LIVE) continue;
+            free += recordSize(position);
+            drop(position);
+        }
+
+        compact();
+    }
+
+    /**
+     * Move the live records to the front of the file, in order, and index them again
+     */
+    private void compact() {
+        byte[] live = new byte[end];
+        int length = 0;
+        for (int position = 0; position < end; position += recordSize(position)) {
+            if (buffer.get(position) != LIVE) continue;
+            int size = recordSize(position);
+            buffer.get(position, live, length, size);
+            length += size;
+        }
+
+        buffer.put(0, live, 0, length);
+        end = length;
+        buffer.put(end, END);
+        scan();
+    }
+
+    /**
+     * Rebuild the index from the file, stopping at the end mark or at a torn record
+     */
+    private void scan() {
+        order.clear();
+        positionsById.clear();
+        liveCount = 0;
+        liveBytes = 0;
+
+        int position = 0;
+        while (position + HEADER_SIZE <= capacity) {
+            byte state = buffer.get(position);
+            if (state != LIVE && state != DROPPED) break;
+
+            int size = recordSize(position);
+            if (size < HEADER_SIZE + FIXED_BODY_SIZE || position + size > capacity) break;
+
+            nextSequence = Math.max(nextSequence, buffer.getLong(position + 1) + 1);
+            if (state == LIVE) index(position, buffer.getInt(position + HEADER_SIZE));
+            position += size;
+        }
+
+        end = position;
+        if (end < capacity) buffer.put(end, END);
+    }
+
+    private void index(int position, int messageId) {
+        order.add(position);
+        positionsById.computeIfAbsent(messageId, id -> new ArrayDeque<>()).add(position);
+        liveCount++;
+        liveBytes += recordSize(position);
+    }
+
+    private void drop(int position) {
+        buffer.put(position, DROPPED);
+        liveCount--;
+        liveBytes -= recordSize(position);
+    }
+
+    private void clear() {
+        order.clear();
+        positionsById.clear();
+        liveBytes = 0;
+        end = 0;
+        buffer.put(0, END);
+    }
+
+    private int recordSize(int position) {
+        return HEADER_SIZE + buffer.getInt(position + 18);
+    }
+
+    private Message read(int position) {
+        int body = position + HEADER_SIZE;
+        int textLength = buffer.getInt(body + 21);
+        String text = null;
+        if (textLength >= 0) {
+            byte[] bytes = new byte[textLength];
+            buffer.get(body + FIXED_BODY_SIZE, bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Message m = new Message(buffer.getInt(body), text);
+        long value = buffer.getLong(body + 5);
+        switch (buffer.get(body + 4)) {
+            case Message.FLOAT_VALUE:
+                m.SetFloatValue(Float.intBitsToFloat((int) value));
+                break;
+            case Message.DOUBLE_VALUE:
+                m.SetDoubleValue(Double.longBitsToDouble(value));
+                break;
+            case Message.LONG_VALUE:
+                m.SetLongValue(value);
+                break;
+        }
+        m.SetTimeStamp(buffer.getLong(body + 13));
+        return m;
+    }
+
+    /**
+     * Unmap a buffer now rather than when it is collected, so that its file can be deleted on every platform.
+     * The JDK only offers this through sun.misc.Unsafe; without it the collector unmaps the buffer.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the collector
+        }
+    }
+
+    private static long valueBits(Message m) {
+        switch (m.GetValueType()) {
+            case Message.FLOAT_VALUE:
+                return Float.floatToRawIntBits(m.GetFloatValue());
+            case Message.DOUBLE_VALUE:
+                return Double.doubleToRawLongBits(m.GetDoubleValue());
+            case Message.LONG_VALUE:
+                return m.GetLongValue();
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import MessagePackage.Message;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Description:
+ * This class records end-to-end latency traces of messages. Tracing is off unless the process runs with
+ * -Dmessage.trace=true. When it is on, sensors start a trace on every reading, ECSMonitor joins the commands
+ * it sends to the trace of the reading that caused them, and every hop is time stamped on the message:
+ * sent (MessageBus), enqueued (MessageManager), drained (MessageBus) and handled (MessageDispatcher, ECSMonitor).
+ * The latency between hops is recorded in one histogram per hop:
+ *  post     - sent to enqueued, the RMI call to the message manager
+ *  queue    - enqueued to drained, the time spent waiting for the receiver's next poll
+ *  dispatch - drained to handled
+ *  direct   - trace origin to handled, for messages that started their trace (sensor to monitor)
+ *  loop     - trace origin to handled, for messages caused by another one (sensor to monitor to controller)
+ * The histograms are printed every -Dmessage.trace.report seconds (default 10).
+ * Notice that in a single process there is only one instance of MessageTracer
+ */
+public class MessageTracer {
+    private static MessageTracer instance = null;
+    private static final String TRACE_PROPERTY = "message.trace";
+    private static final String REPORT_PROPERTY = "message.trace.report";
+
+    private boolean enabled;
+    private LatencyHistogram postLatency = new LatencyHistogram();
+    private LatencyHistogram queueLatency = new LatencyHistogram();
+    private LatencyHistogram dispatchLatency = new LatencyHistogram();
+    private LatencyHistogram directLatency = new LatencyHistogram();
+    private LatencyHistogram loopLatency = new LatencyHistogram();
+
+    private MessageTracer(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /***************************************************************************
+     * Purpose: Users of this class get the singleton by this method
+     *
+     * Arguments: None.
+     *
+     * Returns: MessageTracer.
+     *
+     ****************************************************************************/
+    public static synchronized MessageTracer getInstance() {
+        if (instance == null) {
+            instance = new MessageTracer(Boolean.getBoolean(TRACE_PROPERTY));
+            if (instance.enabled) {
+                long period = Long.getLong(REPORT_PROPERTY, 10) * 1000;
+                ParticipantRuntime.getInstance().scheduleAtFixedRate(() -> System.out.println(instance.report()), period, period);
+            }
+        }
+
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /***************************************************************************
+     * Purpose: Make a message the origin of a new trace, if tracing is on
+     *
+     * Arguments: Message - message about to be sent, e.g. a sensor reading
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void start(Message m) {
+        if (!enabled || m.IsFrozen()) return;
+
+        long traceId;
+        do {
+            traceId = ThreadLocalRandom.current().nextLong();
+        } while (traceId == 0);
+        m.StartTrace(traceId);
+    }
+
+    /***************************************************************************
+     * Purpose: Join a message to the trace of the message that caused it.
+     * Shared constant messages (see ControlMessages) are copied first.
+     *
+     * Arguments:
+     * Message - the cause, e.g. the reading a command reacts to; may be null
+     * Message - the message about to be sent
+     *
+     * Returns: Message - the message to send; the second argument itself if the cause is not traced.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public Message follow(Message cause, Message effect) {
+        if (!enabled || cause == null || !cause.IsTraced()) return effect;
+
+        Message m = effect;
+        if (m.IsFrozen()) {
+            m = new Message(effect.GetMessageId(), effect.GetMessage());
+        }
+        m.FollowTrace(cause);
+        return m;
+    }
+
+    /***************************************************************************
+     * Purpose: Stamp the sent hop of a traced message
+     *
+     * Arguments: Message - message being sent
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void sent(Message m) {
+        if (m.IsTraced()) m.SetTraceTime(Message.TRACE_SENT, System.currentTimeMillis());
+    }
+
+    /***************************************************************************
+     * Purpose: Stamp the drained hop of a traced message and record the post and queue latency
+     *
+     * Arguments: Message - message pulled from a queue
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void drained(Message m) {
+        if (!m.IsTraced()) return;
+
+        long now = System.currentTimeMillis();
+        m.SetTraceTime(Message.TRACE_DRAINED, now);
+        long sent = m.GetTraceTime(Message.TRACE_SENT);
+        long enqueued = m.GetTraceTime(Message.TRACE_ENQUEUED);
+        if (sent != 0 && enqueued != 0) postLatency.record(enqueued - sent);
+        if (enqueued != 0) queueLatency.record(now - enqueued);
+    }
+
+    /***************************************************************************
+     * Purpose: Stamp the handled hop of a traced message and record the dispatch and end-to-end latency
+     *
+     * Arguments: Message - message handed to a handler
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void handled(Message m) {
+        if (!m.IsTraced()) return;
+
+        long now = System.currentTimeMillis();
+        m.SetTraceTime(Message.TRACE_HANDLED, now);
+        long drained = m.GetTraceTime(Message.TRACE_DRAINED);
+        if (drained != 0) dispatchLatency.record(now - drained);
+
+        if (m.GetTraceDepth() == 0) {
+            directLatency.record(now - m.GetTraceOrigin());
+        } else {
+            loopLatency.record(now - m.GetTraceOrigin());
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: Format the percentiles of every hop
+     *
+     * Arguments: None.
+     *
+     * Returns: String.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public String report() {
+        return "Trace latency ms (count p50/p99/max):"
+                + format("post", postLatency)
+                + format("queue", queueLatency)
+                + format("dispatch", dispatchLatency)
+                + format("direct", directLatency)
+                + format("loop", loopLatency);
+    }
+
+    private static String format(String hop, LatencyHistogram h) {
+        return "  " + hop + " " + h.count() + " " + h.percentile(0.5) + "/" + h.percentile(0.99) + "/" + h.max();
+    }
+}
@@ -1,3 +1,10 @@
 public interface MessageType {
+    int TEMPERATURE_READING = 1;
+    int HUMIDITY_READING = 2;
+    int HUMIDITY_COMMAND = 4;
+    int TEMPERATURE_COMMAND = 5;
+    int HUMIDITY_CONFIRMATION = -4;
+    int TEMPERATURE_CONFIRMATION = -5;
     int FAULT_TOLERANT_PARTICIPANT_HEART_BEAT = 66;
+    int HALT = 99;
 }
@@ -227,7 +227,7 @@ public class MessageUtility
 							Msg = eq.GetMessage();
 							System.out.print( (i+1) + "::Sender ID: " + Msg.GetSenderId());
 							System.out.print( ":: Message ID:: " + Msg.GetMessageId());
-							System.out.println("::" + Msg.GetMessage());
+							System.out.println("::" + Msg.GetValueText());
 
 						} // for
 
@@ -1,28 +1,53 @@
+import MessagePackage.Membership;
 import MessagePackage.Message;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
  * This class is in charge of fault tolerance management and communicating with MessageBus for ECSMontior
+ * Heart beats are not messages: they are read from the membership change feed of the main message manager,
+ * together with the participants that unregistered, every -Dmonitor.failure.tick milliseconds (default 250),
+ * independently of message pulling.
+ * A participant fails when its silence reaches the timeout the phi accrual failure detector of the message
+ * manager learned for it, plus one tick for the delay of the feed. Expiry is checked on every tick, on a timing
+ * wheel that only visits the participants whose deadline passed.
+ * Callbacks run on an EventDispatcher with -Dmonitor.event.threads threads (default 2), never on the
+ * polling thread: incoming messages are delivered in order, and the ready and failure events of one
+ * participant type, like those of the message manager, are delivered in the order they were detected.
+ * The ready event of a participant type is sent when its first participant is seen, and again whenever another one
+ * joins, so that a participant started or restarted later also gets the current state.
+ * The registry and the timing wheel belong to the tasks of the ScheduledParticipant. A message manager event
+ * arrives on a thread of the message bus, so it only asks for a reset, which the next task makes.
  */
 public class MonitorManager {
     private static final int PULL_MESSAGE_INTERVAL = 1000;
-    private static final int HEART_BEAT_EXPIRE_TIME = 3000;
-
-    private Map<ParticipantType, Set<Long>> participantMap;
-    private Map<ParticipantType, Long> mainParticipantMap;
-    private Map<Long, Long> participantLastHeartBeatMap;
+    private static final long FAILURE_DETECTION_TICK = Long.getLong("monitor.failure.tick", 250);
+    private static final long TYPICAL_HEART_BEAT_TIMEOUT = 5000; // sizes the timing wheel; longer timeouts still work
+    private static final int EVENT_THREADS = Integer.getInteger("monitor.event.threads", 2);
+    private static final String INCOMING_MESSAGES_EVENT = "incoming messages";
+    private static final String MESSAGE_MANAGER_EVENT = "message manager";
+
+    private ParticipantRegistry registry;
+    private TimingWheel heartBeatDeadlines;
+    private long[] expiredHeartBeats;
+    private int expiredHeartBeatCount;
+    private final AtomicBoolean resetRequested = new AtomicBoolean(false);  // set by the message bus threads
 
     private Map<ParticipantType, List<Runnable>> participantReadyCallbacks;
-    private Map<ParticipantType, Boolean> participantReadyEventFlag;
+    private Map<ParticipantType, Boolean> participantReadyEventFlag;  // false until sent for the latest newcomer
     private Map<ParticipantType, List<BiConsumer<Long, Boolean>>> participantFailureCallbacks;
     private List<Consumer<List<Message>>> incomingMessagesCallbacks;
     private List<Runnable> messageManagerReadyCallbacks;
     private List<BiConsumer<String, Boolean>> messageManagerFailureCallbacks;
+    private List<BiConsumer<String, Boolean>> messageManagerRecoveryCallbacks;
+    private EventDispatcher events;
 
     private MessageBus mb;
+    private List<Message> pulledMessages;   // reused by every pull
+    private ScheduledParticipant participant;
 
     public MonitorManager() {
         participantReadyCallbacks = new HashMap<>();
@@ -30,12 +55,15 @@ public class MonitorManager {
         incomingMessagesCallbacks = new ArrayList<>();
         messageManagerReadyCallbacks = new ArrayList<>();
         messageManagerFailureCallbacks = new ArrayList<>();
+        messageManagerRecoveryCallbacks = new ArrayList<>();
+        pulledMessages = new ArrayList<>();
+        events = new EventDispatcher("monitor-events", Math.max(1, EVENT_THREADS));
 
-        initializeParticipantData();
         initialzeParticipantReadyEventData();
 
-        participantLastHeartBeatMap = new HashMap<>();
-        mainParticipantMap = new HashMap<>();
+        registry = new ParticipantRegistry();
+        expiredHeartBeats = new long[16];
+        heartBeatDeadlines = new TimingWheel(FAILURE_DETECTION_TICK, TYPICAL_HEART_BEAT_TIMEOUT, System.currentTimeMillis());
 
         mb = MessageBus.getInstance();
     }
@@ -119,6 +147,22 @@ public class MonitorManager {
         messageManagerFailureCallbacks.add(callback);
     }
 
+    /***************************************************************************
+     * Purpose: This method allows ECSMonitor to listen to the message manager recovery event.
+     *
+     * Arguments:
+     * BiConsumer<String, Boolean> - callback with the recovered message manager's IP address and
+     * whether it is now the main channel as input
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void registerForMessageManagerRecoveryEvent(BiConsumer<String, Boolean> callback) {
+        messageManagerRecoveryCallbacks.add(callback);
+    }
+
     /***************************************************************************
      * Purpose: The following methods simply exposes the same methods of MessageBus to ECSMonitor
      *
@@ -141,7 +185,11 @@ public class MonitorManager {
 
 
     /***************************************************************************
-     * Purpose: This method makes the object start working
+     * Purpose: This method makes the object start working. Messages are pulled
+     * periodically on the shared ParticipantRuntime, so this method returns
+     * as soon as the message bus is initialized. Sends go through the outbox of
+     * the message bus, so the commands ECSMonitor sends from its message callbacks
+     * never wait for the network.
      *
      * Arguments: None.
      *
@@ -152,93 +200,159 @@ public class MonitorManager {
      ****************************************************************************/
     public void start(String[] IPAddresses) throws Exception {
         mb.init(IPAddresses);
+        mb.setAsyncSend(true);
 
-        messageManagerReadyCallbacks.forEach(o -> new Thread(o).start());
+        messageManagerReadyCallbacks.forEach(o -> events.submit(MESSAGE_MANAGER_EVENT, o));
 
         mb.registerForMessageManagerFailureEvent(this::messageManagerFailed);
+        mb.registerForMessageManagerRecoveryEvent(this::messageManagerRecovered);
 
-        // pulling messages loop
-        while (true) {
+        participant = new ScheduledParticipant(ParticipantRuntime.getInstance());
+        participant.every(PULL_MESSAGE_INTERVAL, this::pullMessages);
+        participant.every(FAILURE_DETECTION_TICK, this::expireHeartBeats);
+        participant.start();
+    }
 
-            List<Message> messageList = mb.getAvailableMessages();
-            List<Message> filteredMessageList = new ArrayList<>();
+    /***************************************************************************
+     * Purpose: This method stops pulling messages
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void stop() {
+        if (participant != null) participant.stop();
+    }
+
+    /**
+     * One round of the pulling messages loop
+     */
+    private void pullMessages() {
+        try {
+            resetIfRequested();
+            mb.drainTo(pulledMessages, Integer.MAX_VALUE);
+            List<Message> filteredMessageList = new ArrayList<>();   // handed to the callbacks, so not reused
 
             // message processing loop
-            for (Message m : messageList) {
-
-                if (m.GetMessageId() == MessageType.FAULT_TOLERANT_PARTICIPANT_HEART_BEAT) {
-                    long participantID = m.GetSenderId();
-                    ParticipantType type = ParticipantType.toPartipantType(m.GetMessage());
-
-                    // add newcomer participant
-                    if (type != null) {
-                        Set<Long> participantSet = participantMap.get(type);
-                        if (!participantSet.contains(participantID)) {
-                            participantSet.add(participantID);
-                        }
-                        if (!mainParticipantMap.containsKey(type)) {
-                            mainParticipantMap.put(type, participantID);
-                        }
-                    }
-
-                    // refresh heart beat
-                    participantLastHeartBeatMap.put(participantID, System.currentTimeMillis());
-                } else {
-                    if (isMainParticipant(m.GetSenderId())) {
-                        filteredMessageList.add(m);
-                    }
+            for (Message m : pulledMessages) {
+                if (registry.isMain(m.GetSenderId())) {
+                    filteredMessageList.add(m);
                 }
             }
+            pulledMessages.clear();
 
             // pass filtered messages to whoever cares
-            incomingMessagesCallbacks.forEach(o -> o.accept(filteredMessageList));
+            incomingMessagesCallbacks.forEach(o -> events.submit(INCOMING_MESSAGES_EVENT, () -> o.accept(filteredMessageList)));
 
             // detect ready state of participants
-            Iterator<ParticipantType> it = participantMap.keySet().iterator();
-            while (it.hasNext()) {
-                ParticipantType type = it.next();
-                if (!participantReadyEventFlag.get(type) && participantMap.get(type).size() > 0) {
-                    participantReadyCallbacks.get(type).forEach(o -> new Thread(o).start());
+            for (ParticipantType type : participantReadyEventFlag.keySet()) {
+                if (!participantReadyEventFlag.get(type) && registry.count(type) > 0) {
+                    participantReadyCallbacks.get(type).forEach(o -> events.submit(type, o));
                     participantReadyEventFlag.put(type, true);
                 }
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            // detect liveness of participants
-            it = participantMap.keySet().iterator();
-            long currentTime = System.currentTimeMillis();
-            while (it.hasNext()) {
-                ParticipantType type = it.next();
-                Set<Long> set = participantMap.get(type);
-                Long[] setArray = set.stream().toArray(Long[]::new);
-                for (int i = 0; i < setArray.length; i++) {
-                    long id = setArray[i];
-                    if (currentTime - participantLastHeartBeatMap.get(id) > HEART_BEAT_EXPIRE_TIME) { // participant died
-                        // notify monitor
-                        participantFailureCallbacks.get(type).forEach(o -> o.accept(id, set.size() <= 1));
-
-                        // unregister from message channel
-                        mb.UnRegister(id);
-
-                        // switch main participant
-                        if (mainParticipantMap.get(type) == id && set.size() > 1) {
-                            mainParticipantMap.put(type, setArray[(i + 1) % setArray.length]);
-                        }
-
-                        // clear from local variables
-                        participantLastHeartBeatMap.remove(id);
-                        set.remove(id);
-                    }
-                }
-            }
+    /**
+     * One tick of the failure detector
+     */
+    private void expireHeartBeats() {
+        try {
+            resetIfRequested();
+            updateMembership(mb.getMembership(), System.currentTimeMillis());
+            detectFailures(System.currentTimeMillis());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            try {
-                Thread.sleep(PULL_MESSAGE_INTERVAL);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    /**
+     * Apply the membership changes reported by the message manager
+     *
+     * @param ms membership changes, null if the message manager did not answer
+     * @param currentTime time the changes were received at
+     * @throws Exception unregister exception
+     */
+    void updateMembership(Membership ms, long currentTime) throws Exception {
+        if (ms == null) return;
+
+        for (int i = 0; i < ms.size(); i++) {
+            recordHeartBeat(ms.getId(i), ParticipantType.toPartipantType(ms.getType(i)), currentTime - ms.getSilence(i),
+                    ms.getTimeout(i));
+        }
+        for (int i = 0; i < ms.leftCount(); i++) {
+            participantFailed(ms.getLeftId(i), false);
+        }
+    }
+
+    /**
+     * Register a heart beat of a participant, adding it if it is a newcomer
+     *
+     * @param participantID sender of the heart beat
+     * @param type participant type carried by the heart beat, null if unknown
+     * @param currentTime arrival time
+     * @param timeout silence after which the participant is suspected
+     */
+    void recordHeartBeat(long participantID, ParticipantType type, long currentTime, long timeout) {
+        // add newcomer participant; a participant that starts or restarts late needs the ready event too
+        if (type != null && registry.add(participantID, type)) {
+            participantReadyEventFlag.put(type, false);
+        }
+
+        // refresh heart beat, moving its deadline on the timing wheel
+        if (registry.contains(participantID)) {
+            heartBeatDeadlines.schedule(participantID, currentTime + timeout + FAILURE_DETECTION_TICK);
         }
     }
 
+    /**
+     * Failure detection: notify, unregister and forget every participant whose heart beat expired
+     *
+     * @param currentTime time the detection is made at
+     * @throws Exception unregister exception
+     */
+    void detectFailures(long currentTime) throws Exception {
+        if (heartBeatDeadlines.advance(currentTime, this::addExpiredHeartBeat) == 0) return;
+
+        for (int i = 0; i < expiredHeartBeatCount; i++) {
+            participantFailed(expiredHeartBeats[i], true);
+        }
+        expiredHeartBeatCount = 0;
+    }
+
+    private void addExpiredHeartBeat(long id) {
+        if (expiredHeartBeatCount == expiredHeartBeats.length) {
+            expiredHeartBeats = Arrays.copyOf(expiredHeartBeats, expiredHeartBeatCount * 2);
+        }
+        expiredHeartBeats[expiredHeartBeatCount++] = id;
+    }
+
+    /**
+     * Notify and forget a participant whose heart beat expired or that unregistered
+     *
+     * @param id participant ID
+     * @param unregister whether the participant is still registered with the message manager
+     * @throws Exception unregister exception
+     */
+    private void participantFailed(long id, boolean unregister) throws Exception {
+        // forget the participant; the next one of its type becomes main if it was main
+        ParticipantType type = registry.remove(id);
+        if (type == null) return;
+
+        // notify monitor
+        boolean allFailed = registry.count(type) == 0;
+        participantFailureCallbacks.get(type).forEach(o -> events.submit(type, () -> o.accept(id, allFailed)));
+
+        // unregister from message channel
+        if (unregister) mb.UnRegister(id);
+    }
+
     /**
      * Handle message manager fail event
      *
@@ -246,34 +360,31 @@ public class MonitorManager {
      * @param allFailed
      */
     private void messageManagerFailed(String IP, Boolean allFailed) {
-        // reset
-        participantMap.clear();
-        initializeParticipantData();
-        mainParticipantMap.clear();
-        participantLastHeartBeatMap.clear();
+        // reset; the membership of the new main channel arrives as a snapshot
+        resetRequested.set(true);
 
         // notify
-        messageManagerFailureCallbacks.forEach(o -> o.accept(IP, allFailed));
+        messageManagerFailureCallbacks.forEach(o -> events.submit(MESSAGE_MANAGER_EVENT, () -> o.accept(IP, allFailed)));
     }
 
-    private boolean isMainParticipant(long id) {
-        Iterator<ParticipantType> it = mainParticipantMap.keySet().iterator();
-        while (it.hasNext()) {
-            long mainID = mainParticipantMap.get(it.next());
-            if (mainID == id) {
-                return true;
-            }
+    private void messageManagerRecovered(String IP, Boolean mainChannel) {
+        if (mainChannel) {
+            // participant ids differ between message managers; the new main channel's arrive as a snapshot
+            resetRequested.set(true);
         }
-        return false;
+
+        // notify
+        messageManagerRecoveryCallbacks.forEach(o -> events.submit(MESSAGE_MANAGER_EVENT, () -> o.accept(IP, mainChannel)));
     }
 
-    private void initializeParticipantData() {
-        participantMap = new HashMap<>();
+    /**
+     * Forget every participant if a message manager event asked for it since the previous task
+     */
+    private void resetIfRequested() {
+        if (!resetRequested.getAndSet(false)) return;
 
-        participantMap.put(ParticipantType.HUMIDITY_CONTROLLER, new HashSet<>());
-        participantMap.put(ParticipantType.HUMIDITY_SENSOR, new HashSet<>());
-        participantMap.put(ParticipantType.TEMPERATURE_CONTROLLER, new HashSet<>());
-        participantMap.put(ParticipantType.TEMPERATURE_SENSOR, new HashSet<>());
+        registry.clear();
+        heartBeatDeadlines.clear();
     }
 
     private void initialzeParticipantReadyEventData() {
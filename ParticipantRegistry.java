@@ -0,0 +1,213 @@
+import java.util.Arrays;
+
+/**
+ * Description:
+ * This class is the registry of the participants a monitor knows about: their type and their role, main or backup.
+ * Each participant is a record in parallel primitive arrays, found by ID through a LongIntHashMap, and the records
+ * of one type form a doubly linked list. Every type has at most one main participant, the one whose messages the
+ * monitor acts on; when it leaves, the next participant of the type becomes main.
+ * Looking up, adding and removing a participant and the "is main" check are O(1) and never box the ID, so the
+ * registry can be consulted on every heart beat and every message. Any monitor-type participant may use it.
+ * This class is not thread safe.
+ */
+public class ParticipantRegistry {
+    private static final int NONE = -1;
+    private static final ParticipantType[] TYPES = ParticipantType.values();
+
+    private LongIntHashMap index;   // ID -> record
+    private long[] ids;
+    private byte[] types;           // ParticipantType ordinal
+    private int[] prev;             // records of the same type
+    private int[] next;
+    private int freeRecord = NONE;  // first record of the free list, linked through next
+    private int recordCount = 0;
+
+    private int[] firstOfType;      // per type: first record, NONE if the type has no participant
+    private int[] countOfType;
+    private long[] mainOfType;      // per type: ID of the main participant
+    private boolean[] hasMain;
+
+    public ParticipantRegistry() {
+        index = new LongIntHashMap();
+        ids = new long[16];
+        types = new byte[16];
+        prev = new int[16];
+        next = new int[16];
+        firstOfType = new int[TYPES.length];
+        countOfType = new int[TYPES.length];
+        mainOfType = new long[TYPES.length];
+        hasMain = new boolean[TYPES.length];
+        clear();
+    }
+
+    /***************************************************************************
+     * Purpose: Add a participant. It becomes the main participant of its type
+     * if the type has none.
+     *
+     * Arguments:
+     * long - participant ID
+     * ParticipantType - participant type
+     *
+     * Returns: boolean - true if the participant was not known yet.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public boolean add(long id, ParticipantType type) {
+        if (index.containsKey(id)) return false;
+
+        int record = allocateRecord();
+        int t = type.ordinal();
+        ids[record] = id;
+        types[record] = (byte) t;
+        index.put(id, record);
+
+        // link at the tail of the type's list, so backups take over in arrival order
+        int first = firstOfType[t];
+        if (first == NONE) {
+            firstOfType[t] = record;
+            prev[record] = record;
+            next[record] = record;
+        } else {
+            int last = prev[first];
+            prev[record] = last;
+            next[record] = first;
+            next[last] = record;
+            prev[first] = record;
+        }
+        countOfType[t]++;
+
+        if (!hasMain[t]) {
+            mainOfType[t] = id;
+            hasMain[t] = true;
+        }
+        return true;
+    }
+
+    /***************************************************************************
+     * Purpose: Remove a participant. If it was the main participant of its
+     * type, the next participant of the type becomes main.
+     *
+     * Arguments: long - participant ID
+     *
+     * Returns: ParticipantType - type of the removed participant, null if it was not known.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ParticipantType remove(long id) {
+        int record = index.remove(id, NONE);
+        if (record == NONE) return null;
+
+        int t = types[record];
+        int following = next[record];
+        if (following == record) {
+            firstOfType[t] = NONE;
+        } else {
+            next[prev[record]] = following;
+            prev[following] = prev[record];
+            if (firstOfType[t] == record) firstOfType[t] = following;
+        }
+        countOfType[t]--;
+
+        if (hasMain[t] && mainOfType[t] == id) {
+            hasMain[t] = countOfType[t] > 0;
+            mainOfType[t] = hasMain[t] ? ids[following] : 0;
+        }
+
+        releaseRecord(record);
+        return TYPES[t];
+    }
+
+    public boolean contains(long id) {
+        return index.containsKey(id);
+    }
+
+    /***************************************************************************
+     * Purpose: Get the type of a participant
+     *
+     * Arguments: long - participant ID
+     *
+     * Returns: ParticipantType - null if the participant is not known.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ParticipantType typeOf(long id) {
+        int record = index.get(id, NONE);
+        return record == NONE ? null : TYPES[types[record]];
+    }
+
+    /***************************************************************************
+     * Purpose: Check whether a participant is the main participant of its type
+     *
+     * Arguments: long - participant ID
+     *
+     * Returns: boolean.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public boolean isMain(long id) {
+        int record = index.get(id, NONE);
+        if (record == NONE) return false;
+
+        int t = types[record];
+        return hasMain[t] && mainOfType[t] == id;
+    }
+
+    /***************************************************************************
+     * Purpose: Get the main participant of a type
+     *
+     * Arguments: ParticipantType - participant type
+     *
+     * Returns: long - participant ID, -1 if the type has no participant.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public long mainOf(ParticipantType type) {
+        int t = type.ordinal();
+        return hasMain[t] ? mainOfType[t] : -1;
+    }
+
+    public int count(ParticipantType type) {
+        return countOfType[type.ordinal()];
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public void clear() {
+        index.clear();
+        Arrays.fill(firstOfType, NONE);
+        Arrays.fill(countOfType, 0);
+        Arrays.fill(mainOfType, 0);
+        Arrays.fill(hasMain, false);
+        freeRecord = NONE;
+        recordCount = 0;
+    }
+
+    private int allocateRecord() {
+        if (freeRecord != NONE) {
+            int record = freeRecord;
+            freeRecord = next[record];
+            return record;
+        }
+
+        if (recordCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            types = Arrays.copyOf(types, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return recordCount++;
+    }
+
+    private void releaseRecord(int record) {
+        next[record] = freeRecord;
+        freeRecord = record;
+    }
+}
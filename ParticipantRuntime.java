@@ -0,0 +1,229 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Description:
+ * This class is the shared scheduler that drives the periodic work of participants (message polling,
+ * simulation ticks and heart beats) instead of one sleeping thread per loop. All participants in a
+ * process share a pool of daemon threads, so hundreds of simulated participants can run in one JVM.
+ * Most tasks make remote calls that may wait for a hung message manager until the RMI timeout, so one
+ * timer thread only keeps the schedule and every run is handed to the pool, which keeps
+ * -Dparticipant.runtime.threads threads (default the number of processors) and starts more while they are all
+ * busy. A blocked task thus holds a thread of its own, and the other participants and heart beats keep their
+ * times. The runs of a task never overlap, so the pool grows at most to the tasks in progress; the threads
+ * beyond the kept ones stop after 10 seconds without work.
+ * Notice that in a single process there is only one instance of ParticipantRuntime
+ */
+public class ParticipantRuntime {
+    private static ParticipantRuntime instance = null;
+    private static final String THREADS_PROPERTY = "participant.runtime.threads";
+    private static final long IDLE_TIMEOUT = 10000;
+
+    private ScheduledThreadPoolExecutor scheduler;  // only times the runs
+    private ThreadPoolExecutor workers;             // makes them
+
+    private ParticipantRuntime(int threads) {
+        scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "participant-runtime-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, Integer.MAX_VALUE, IDLE_TIMEOUT, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "participant-runtime-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /***************************************************************************
+     * Purpose: Users of this class get the singleton by this method
+     *
+     * Arguments: None.
+     *
+     * Returns: ParticipantRuntime.
+     *
+     ****************************************************************************/
+    public static synchronized ParticipantRuntime getInstance() {
+        if (instance == null) {
+            int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+            instance = new ParticipantRuntime(Math.max(2, threads));
+        }
+
+        return instance;
+    }
+
+    /***************************************************************************
+     * Purpose: Run a task repeatedly with a fixed delay between the end of one run
+     * and the start of the next. Used for polling and simulation ticks.
+     *
+     * Arguments:
+     * Runnable - task
+     * long - delay before the first run in milliseconds
+     * long - delay between runs in milliseconds
+     *
+     * Returns: ScheduledFuture, cancel it to stop the task.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay) {
+        return new PeriodicTask(guard(task), delay, false).start(initialDelay);
+    }
+
+    /***************************************************************************
+     * Purpose: Run a task repeatedly at a fixed rate. A run that is late does not
+     * overlap the previous one, it starts as soon as that one ended.
+     *
+     * Arguments:
+     * Runnable - task
+     * long - delay before the first run in milliseconds
+     * long - period in milliseconds
+     *
+     * Returns: ScheduledFuture, cancel it to stop the task.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period) {
+        return new PeriodicTask(guard(task), period, true).start(initialDelay);
+    }
+
+    /***************************************************************************
+     * Purpose: Run a task once after a delay.
+     *
+     * Arguments:
+     * Runnable - task
+     * long - delay in milliseconds
+     *
+     * Returns: ScheduledFuture.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
+        Runnable run = guard(task);
+        return scheduler.schedule(() -> workers.execute(run), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /***************************************************************************
+     * Purpose: Stop the scheduler. Running tasks are allowed to finish; pending
+     * runs are discarded.
+     *
+     * Arguments: long - maximum time to wait for running tasks in milliseconds
+     *
+     * Returns: boolean - true if all tasks finished in time.
+     *
+     * Exceptions: InterruptedException.
+     *
+     ****************************************************************************/
+    public boolean shutdown(long timeout) throws InterruptedException {
+        scheduler.shutdown();
+        workers.shutdown();
+        return workers.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A periodic task that throws would never be scheduled again, so report the error and keep the
+     * schedule alive instead
+     */
+    private Runnable guard(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        };
+    }
+
+    /**
+     * A repeated task: each run is timed by the scheduler and made by a worker, and the next one is only
+     * scheduled when it ended, so the runs of a task never overlap
+     */
+    private class PeriodicTask implements ScheduledFuture<Object>, Runnable {
+        private final Runnable task;
+        private final long period;
+        private final boolean fixedRate;
+        private final CompletableFuture<Object> cancelled = new CompletableFuture<>();  // only ever cancelled
+        private ScheduledFuture<?> next;    // trigger of the next run
+        private long nextStart;             // fixed rate: planned start of the next run, in nanoseconds
+
+        PeriodicTask(Runnable task, long period, boolean fixedRate) {
+            this.task = task;
+            this.period = period;
+            this.fixedRate = fixedRate;
+        }
+
+        PeriodicTask start(long initialDelay) {
+            nextStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelay);
+            arm(TimeUnit.MILLISECONDS.toNanos(initialDelay));
+            return this;
+        }
+
+        private synchronized void arm(long delay) {
+            if (isCancelled()) return;
+
+            try {
+                next = scheduler.schedule(() -> workers.execute(this), delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // the runtime was shut down
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) return;
+
+            task.run();
+            if (fixedRate) {
+                nextStart += TimeUnit.MILLISECONDS.toNanos(period);
+                arm(Math.max(0, nextStart - System.nanoTime()));
+            } else {
+                arm(TimeUnit.MILLISECONDS.toNanos(period));
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean done = cancelled.cancel(false);
+            synchronized (this) {
+                if (next != null) next.cancel(false);
+            }
+            return done;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            return cancelled.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return cancelled.get(timeout, unit);
+        }
+
+        @Override
+        public synchronized long getDelay(TimeUnit unit) {
+            return next == null ? 0 : next.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Description:
+ * This class is a phi accrual failure detector for one participant (Hayashibara et al.). Instead of a fixed
+ * expiry time it learns, over a sliding window, how late the participant's heart beats arrive compared to the
+ * interval it was asked to keep, and expresses suspicion as phi = -log10(probability that the next heart beat is
+ * still to come), assuming normally distributed delays. A participant is suspected once phi reaches the threshold,
+ * so a regular participant is suspected soon after a missed heart beat while an irregular one (GC pauses, slow RMI
+ * calls) is given the extra time its own history asks for.
+ * Learning the delay rather than the raw interval keeps the distribution valid when the participant is asked for
+ * another interval; with a fixed interval both are the same model.
+ * Because phi only grows with the silence, the threshold is equivalent to a timeout that is recomputed on every
+ * heart beat; timeout() returns it so that the deadline can be kept on a timing wheel.
+ * This class is not thread safe.
+ */
+public class PhiAccrualDetector {
+    private final double thresholdDeviations;   // deviations above the mean at which phi reaches the threshold
+    private final long minStdDeviation;
+
+    private long[] delays;      // ring buffer of the most recent delays
+    private int head = 0;
+    private int count = 0;
+    private double sum = 0;
+    private double sumOfSquares = 0;
+    private long lastHeartBeat = -1;
+    private long expectedInterval;
+
+    /***************************************************************************
+     * Purpose: Create a detector that has seen no heart beat yet
+     *
+     * Arguments:
+     * double - phi threshold, e.g. 8 for a suspicion that is wrong once in 10^8
+     * int - number of delays the distribution is learned from
+     * long - lower bound of the standard deviation in milliseconds, so that very
+     *        regular heart beats do not make the detector hair-triggered
+     * long - interval in milliseconds the participant keeps until asked for another
+     *
+     * Exceptions: IllegalArgumentException if the threshold or the window is not positive.
+     *
+     ****************************************************************************/
+    public PhiAccrualDetector(double threshold, int windowSize, long minStdDeviation, long expectedInterval) {
+        if (threshold <= 0) throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        if (windowSize <= 0) throw new IllegalArgumentException("window size must be positive: " + windowSize);
+
+        this.thresholdDeviations = deviationsAt(threshold);
+        this.minStdDeviation = minStdDeviation;
+        this.delays = new long[windowSize];
+        this.expectedInterval = expectedInterval;
+
+        // bootstrap with a spread of a tenth of the interval; real delays push these out of the window
+        add(0);
+        add(expectedInterval / 10);
+        add(-expectedInterval / 10);
+    }
+
+    /***************************************************************************
+     * Purpose: Record the arrival of a heart beat
+     *
+     * Arguments: long - arrival time in milliseconds
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void heartBeat(long currentTime) {
+        if (lastHeartBeat >= 0) add(currentTime - lastHeartBeat - expectedInterval);
+        lastHeartBeat = currentTime;
+    }
+
+    /***************************************************************************
+     * Purpose: Set the interval the participant was asked to keep from its last
+     * heart beat on
+     *
+     * Arguments: long - interval in milliseconds
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void setExpectedInterval(long interval) {
+        expectedInterval = interval;
+    }
+
+    /***************************************************************************
+     * Purpose: Get the suspicion level of the participant
+     *
+     * Arguments: long - current time in milliseconds
+     *
+     * Returns: double - phi, 0 before the first heart beat.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public double phi(long currentTime) {
+        if (lastHeartBeat < 0) return 0;
+
+        double y = (currentTime - lastHeartBeat - expectedInterval - mean()) / stdDeviation();
+        if (y > 0) return phiOfDeviations(y);
+
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return -Math.log10(1 - 1 / (1 + e));
+    }
+
+    /***************************************************************************
+     * Purpose: Get the silence after the last heart beat at which phi reaches
+     * the threshold
+     *
+     * Arguments: None.
+     *
+     * Returns: long - milliseconds.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public long timeout() {
+        return expectedInterval + margin();
+    }
+
+    /***************************************************************************
+     * Purpose: Get the time the detector waits beyond the expected interval
+     * before phi reaches the threshold
+     *
+     * Arguments: None.
+     *
+     * Returns: long - milliseconds.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public long margin() {
+        return (long) Math.ceil(Math.max(0, mean() + thresholdDeviations * stdDeviation()));
+    }
+
+    public long getLastHeartBeat() {
+        return lastHeartBeat;
+    }
+
+    public double mean() {
+        return sum / count;
+    }
+
+    public double stdDeviation() {
+        double mean = mean();
+        double variance = Math.max(0, sumOfSquares / count - mean * mean);
+        return Math.max(minStdDeviation, Math.sqrt(variance));
+    }
+
+    private void add(long delay) {
+        if (count == delays.length) {
+            long oldest = delays[head];
+            sum -= oldest;
+            sumOfSquares -= (double) oldest * oldest;
+        } else {
+            count++;
+        }
+
+        delays[head] = delay;
+        head = (head + 1) % delays.length;
+        sum += delay;
+        sumOfSquares += (double) delay * delay;
+    }
+
+    /**
+     * Solve phi(y) = threshold for y > 0, where y is the silence beyond the mean in standard deviations.
+     * phi grows monotonically with y, so bisection is enough.
+     */
+    private static double deviationsAt(double threshold) {
+        double low = 0, high = 1;
+        while (phiOfDeviations(high) < threshold) high *= 2;
+
+        for (int i = 0; i < 64; i++) {
+            double mid = (low + high) / 2;
+            if (phiOfDeviations(mid) < threshold) low = mid;
+            else high = mid;
+        }
+        return high;
+    }
+
+    private static double phiOfDeviations(double y) {
+        // -log10(e / (1 + e)) with e = exp(-y * (1.5976 + 0.070566 * y^2)), written to avoid underflow
+        double x = y * (1.5976 + 0.070566 * y * y);
+        return (x + Math.log1p(Math.exp(-x))) / Math.log(10);
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Description:
+ * This class is the lifecycle of one participant running on the shared ParticipantRuntime.
+ * It replaces the hand-written while(!Done) { ...; Thread.sleep(Delay); } loop:
+ * 1. periodic tasks are registered with every() and driven by the runtime
+ * 2. start and stop hooks run exactly once
+ * 3. haltOn() stops the participant when the halt message (99) is dispatched
+ * Tasks of the same participant never run concurrently, and once stop() returns no task will start
+ * again. A task that is running then, e.g. waiting for a remote call, ends on its own: neither stop() nor
+ * awaitStop() waits for it, as the lock of the state is not held while a task runs.
+ */
+public class ScheduledParticipant {
+    private ParticipantRuntime runtime;
+    private List<Runnable> tasks;
+    private List<Long> taskPeriods;
+    private List<ScheduledFuture<?>> futures;
+    private List<Runnable> startHooks;
+    private List<Runnable> stopHooks;
+    private CountDownLatch stopLatch;
+    private final Object lock = new Object();       // guards the state below
+    private final Object taskLock = new Object();   // held by the running task
+    private boolean running = false;
+    private boolean stopped = false;
+
+    public ScheduledParticipant(ParticipantRuntime runtime) {
+        this.runtime = runtime;
+        tasks = new ArrayList<>();
+        taskPeriods = new ArrayList<>();
+        futures = new ArrayList<>();
+        startHooks = new ArrayList<>();
+        stopHooks = new ArrayList<>();
+        stopLatch = new CountDownLatch(1);
+    }
+
+    /***************************************************************************
+     * Purpose: Register a task that runs every period once the participant is started
+     *
+     * Arguments:
+     * long - delay between runs in milliseconds
+     * Runnable - task
+     *
+     * Returns: this, for chaining.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ScheduledParticipant every(long period, Runnable task) {
+        synchronized (lock) {
+            tasks.add(task);
+            taskPeriods.add(period);
+        }
+        return this;
+    }
+
+    /***************************************************************************
+     * Purpose: Register a hook that runs when the participant is started
+     *
+     * Arguments: Runnable - hook
+     *
+     * Returns: this, for chaining.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ScheduledParticipant onStart(Runnable hook) {
+        synchronized (lock) {
+            startHooks.add(hook);
+        }
+        return this;
+    }
+
+    /***************************************************************************
+     * Purpose: Register a hook that runs when the participant is stopped
+     *
+     * Arguments: Runnable - hook
+     *
+     * Returns: this, for chaining.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ScheduledParticipant onStop(Runnable hook) {
+        synchronized (lock) {
+            stopHooks.add(hook);
+        }
+        return this;
+    }
+
+    /***************************************************************************
+     * Purpose: Stop the participant when the halt message (99) is dispatched
+     *
+     * Arguments:
+     * MessageDispatcher - dispatcher of this participant
+     * Runnable - halt hook, runs before the stop hooks (e.g. unregister, dispose windows)
+     *
+     * Returns: this, for chaining.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public ScheduledParticipant haltOn(MessageDispatcher md, Runnable hook) {
+        md.register(MessageType.HALT, m -> {
+            hook.run();
+            stop();
+        });
+        return this;
+    }
+
+    /***************************************************************************
+     * Purpose: Run the start hooks and schedule all periodic tasks.
+     * The first run of each task happens immediately.
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void start() {
+        synchronized (lock) {
+            if (running || stopped) return;
+            running = true;
+
+            runHooks(startHooks);
+            for (int i = 0; i < tasks.size(); i++) {
+                Runnable task = tasks.get(i);
+                futures.add(runtime.scheduleWithFixedDelay(() -> runTask(task), 0, taskPeriods.get(i)));
+            }
+        }
+    }
+
+    /***************************************************************************
+     * Purpose: Cancel all periodic tasks and run the stop hooks. It is safe to
+     * call this method from inside a task or handler of this participant.
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void stop() {
+        synchronized (lock) {
+            if (stopped) return;
+            running = false;
+            stopped = true;
+
+            futures.forEach(o -> o.cancel(false));
+            futures.clear();
+            runHooks(stopHooks);
+        }
+        stopLatch.countDown();
+    }
+
+    /***************************************************************************
+     * Purpose: Block the caller until the participant has stopped
+     *
+     * Arguments: None.
+     *
+     * Returns: None.
+     *
+     * Exceptions: InterruptedException.
+     *
+     ****************************************************************************/
+    public void awaitStop() throws InterruptedException {
+        stopLatch.await();
+    }
+
+    public boolean isRunning() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    private void runTask(Runnable task) {
+        synchronized (taskLock) {
+            if (!isRunning()) return;
+            task.run();
+        }
+    }
+
+    private void runHooks(List<Runnable> hooks) {
+        for (Runnable hook : hooks) {
+            try {
+                hook.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
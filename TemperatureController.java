@@ -25,7 +25,7 @@
 * on the local machine.
 *
 * Internal Methods:
-*	static private void ConfirmMessage(MessageManagerInterface ei, String m )
+*	static private void ConfirmMessage(MessageManagerInterface ei, Message msg )
 *
 ******************************************************************************************************************/
 import InstrumentationPackage.*;
@@ -34,17 +34,17 @@ import java.util.*;
 
 class TemperatureController
 {
+	static private boolean HeaterState = false;		// Heater state: false == off, true == on
+	static private boolean ChillerState = false;	// Chiller state: false == off, true == on
+
 	public static void main(String args[])
 	{
 		String MsgMgrIP;					// Message Manager IP address
-		Message Msg = null;					// Message object
-		List<Message> eq = null;				// Message Queue
 		int MsgId = 0;						// User specified message ID
 		MessageBus em = MessageBus.getInstance();	// Interface object to the message manager
-		boolean HeaterState = false;		// Heater state: false == off, true == on
-		boolean ChillerState = false;		// Chiller state: false == off, true == on
+		MessageDispatcher md = new MessageDispatcher(em);	// Dispatches incoming messages to the handlers below
+		ScheduledParticipant participant = new ScheduledParticipant(ParticipantRuntime.getInstance());	// Drives the simulation loop
 		int	Delay = 2500;					// The loop delay (2.5 seconds)
-		boolean Done = false;				// Loop termination flag
 		FaultTolerantParticipant ftParticipant; // fault tolerant capability
 
 		/////////////////////////////////////////////////////////////////////////////////
@@ -76,7 +76,7 @@ class TemperatureController
 			/********************************************************************
 			 ** Here we set up the fault tolerant participant
 			 *********************************************************************/
-			ftParticipant = new FaultTolerantParticipant(ParticipantType.TEMPERATURE_CONTROLLER, ParticipantUtility.sendMessageWrapper(MessageBus.getInstance()));
+			ftParticipant = new FaultTolerantParticipant(ParticipantType.TEMPERATURE_CONTROLLER, MessageBus.getInstance());
 			try {
 				ftParticipant.start();
 			} catch (Exception e) {
@@ -94,12 +94,13 @@ class TemperatureController
 			float WinPosY = 0.3f; 	//This is the Y position of the message window in terms
 								 	//of a percentage of the screen height
 
-			MessageWindow mw = new MessageWindow("Temperature Controller Status Console", WinPosX, WinPosY);
+			Instrumentation ui = Instrumentation.getInstance();	// Swing, console or no displays (-Dinstrumentation)
+			MessageDisplay mw = ui.CreateMessageWindow("Temperature Controller Status Console", WinPosX, WinPosY);
 
 			// Put the status indicators under the panel...
 
-			Indicator ci = new Indicator ("Chiller OFF", mw.GetX(), mw.GetY()+mw.Height());
-			Indicator hi = new Indicator ("Heater OFF", mw.GetX()+(ci.Width()*2), mw.GetY()+mw.Height());
+			IndicatorDisplay ci = ui.CreateIndicator ("Chiller OFF", mw.GetX(), mw.GetY()+mw.Height());
+			IndicatorDisplay hi = ui.CreateIndicator ("Heater OFF", mw.GetX()+(ci.Width()*2), mw.GetY()+mw.Height());
 
 			mw.WriteMessage("Registered with the message manager." );
 
@@ -117,117 +118,111 @@ class TemperatureController
 			} // catch
 
 			/********************************************************************
-			** Here we start the main simulation loop
+			** Here we register the message handlers. We are looking for
+			** MessageIDs = 5, this is a request to turn the heater or chiller
+			** on. Note that we get all the messages at once... there is a 2.5
+			** second delay between samples,.. so the assumption is that there
+			** should only be a message at most. If there are more, it is the
+			** last message that will effect the output of the temperature as
+			** it would in reality.
 			*********************************************************************/
 
-			while ( !Done )
-			{
-
-				try
+			md.register( MessageType.TEMPERATURE_COMMAND, "H1", Msg -> {	// heater on
+				if ( !HeaterState )	// a repeated command is confirmed again but not applied again
 				{
-					eq = em.getAvailableMessages();
-
-				} // try
+					HeaterState = true;
+					mw.WriteMessage("Received heater on message" );
 
-				catch( Exception e )
-				{
-					mw.WriteMessage("Error getting message queue::" + e );
-
-				} // catch
+				} // if
 
-				// If there are messages in the queue, we read through them.
-				// We are looking for MessageIDs = 5, this is a request to turn the
-				// heater or chiller on. Note that we get all the messages
-				// at once... there is a 2.5 second delay between samples,.. so
-				// the assumption is that there should only be a message at most.
-				// If there are more, it is the last message that will effect the
-				// output of the temperature as it would in reality.
+				// Confirm that the message was recieved and acted on
 
-				int qlen = eq.size();
+				ConfirmMessage( em, ControlMessages.HEATER_ON_CONFIRMED );
+			});
 
-				for ( int i = 0; i < qlen; i++ )
+			md.register( MessageType.TEMPERATURE_COMMAND, "H0", Msg -> {	// heater off
+				if ( HeaterState )	// a repeated command is confirmed again but not applied again
 				{
-					Msg = eq.get(i);
+					HeaterState = false;
+					mw.WriteMessage("Received heater off message" );
 
-					if ( Msg.GetMessageId() == 5 )
-					{
-						if (Msg.GetMessage().equalsIgnoreCase("H1")) // heater on
-						{
-							HeaterState = true;
-							mw.WriteMessage("Received heater on message" );
-
-							// Confirm that the message was recieved and acted on
-
-							ConfirmMessage( em, "H1" );
-
-						} // if
+				} // if
 
-						if (Msg.GetMessage().equalsIgnoreCase("H0")) // heater off
-						{
-							HeaterState = false;
-							mw.WriteMessage("Received heater off message" );
+				// Confirm that the message was recieved and acted on
 
-							// Confirm that the message was recieved and acted on
+				ConfirmMessage( em, ControlMessages.HEATER_OFF_CONFIRMED );
+			});
 
-							ConfirmMessage( em, "H0" );
+			md.register( MessageType.TEMPERATURE_COMMAND, "C1", Msg -> {	// chiller on
+				if ( !ChillerState )	// a repeated command is confirmed again but not applied again
+				{
+					ChillerState = true;
+					mw.WriteMessage("Received chiller on message" );
 
-						} // if
+				} // if
 
-						if (Msg.GetMessage().equalsIgnoreCase("C1")) // chiller on
-						{
-							ChillerState = true;
-							mw.WriteMessage("Received chiller on message" );
+				// Confirm that the message was recieved and acted on
 
-							// Confirm that the message was recieved and acted on
+				ConfirmMessage( em, ControlMessages.CHILLER_ON_CONFIRMED );
+			});
 
-							ConfirmMessage( em, "C1" );
+			md.register( MessageType.TEMPERATURE_COMMAND, "C0", Msg -> {	// chiller off
+				if ( ChillerState )	// a repeated command is confirmed again but not applied again
+				{
+					ChillerState = false;
+					mw.WriteMessage("Received chiller off message" );
 
-						} // if
+				} // if
 
-						if (Msg.GetMessage().equalsIgnoreCase("C0")) // chiller off
-						{
-							ChillerState = false;
-							mw.WriteMessage("Received chiller off message" );
+				// Confirm that the message was recieved and acted on
 
-							// Confirm that the message was recieved and acted on
+				ConfirmMessage( em, ControlMessages.CHILLER_OFF_CONFIRMED );
+			});
 
-							ConfirmMessage( em, "C0" );
+			// If the message ID == 99 then this is a signal that the simulation
+			// is to end. At this point, the participant is stopped and this
+			// process unregisters from the message manager.
 
-						} // if
+			participant.haltOn( md, () -> {
+				try
+				{
+					em.UnRegister();
 
-					} // if
+				} // try
 
-					// If the message ID == 99 then this is a signal that the simulation
-					// is to end. At this point, the loop termination flag is set to
-					// true and this process unregisters from the message manager.
+				catch (Exception e)
+				{
+					mw.WriteMessage("Error unregistering: " + e);
 
-					if ( Msg.GetMessageId() == 99 )
-					{
-						Done = true;
+				} // catch
 
-						try
-						{
-							em.UnRegister();
+				mw.WriteMessage( "\n\nSimulation Stopped. \n");
 
-				    	} // try
+				// Get rid of the indicators. The message panel is left for the
+				// user to exit so they can see the last message posted.
 
-				    	catch (Exception e)
-				    	{
-							mw.WriteMessage("Error unregistering: " + e);
+				hi.dispose();
+				ci.dispose();
+			});
 
-				    	} // catch
+			/********************************************************************
+			** Here we start the main simulation loop
+			*********************************************************************/
 
-				    	mw.WriteMessage( "\n\nSimulation Stopped. \n");
+			participant.every( Delay, () -> {
+				// Pull the message queue and dispatch every message to its handler
 
-						// Get rid of the indicators. The message panel is left for the
-						// user to exit so they can see the last message posted.
+				try
+				{
+					md.poll();
 
-						hi.dispose();
-						ci.dispose();
+				} // try
 
-					} // if
+				catch( Exception e )
+				{
+					mw.WriteMessage("Error getting message queue::" + e );
 
-				} // for
+				} // catch
 
 				// Update the lamp status
 
@@ -258,19 +253,25 @@ class TemperatureController
 
 				} // if
 
-				try
-				{
-					Thread.sleep( Delay );
+			}); // every
 
-				} // try
+			// Stop heart beats together with the simulation and wait until the
+			// halt message has been handled
 
-				catch( Exception e )
-				{
-					System.out.println( "Sleep error:: " + e );
+			participant.onStop( ftParticipant::stop );
+			participant.start();
 
-				} // catch
+			try
+			{
+				participant.awaitStop();
+
+			} // try
+
+			catch( InterruptedException e )
+			{
+				System.out.println( "Interrupted:: " + e );
 
-			} // while
+			} // catch
 
 		} else {
 
@@ -283,13 +284,13 @@ class TemperatureController
 	/***************************************************************************
 	* CONCRETE METHOD:: ConfirmMessage
 	* Purpose: This method posts the specified message to the specified message
-	* manager. This method assumes an message ID of -5 which indicates a confirma-
-	* tion of a command.
+	* manager. The message is one of the shared confirmations in ControlMessages
+	* (message ID of -5) which indicate a confirmation of a command.
 	*
 	* Arguments: MessageManagerInterface ei - this is the messagemanger interface
 	*			 where the message will be posted.
 	*
-	*			 string m - this is the received command.
+	*			 Message msg - this is the confirmation of the received command.
 	*
 	* Returns: none
 	*
@@ -297,12 +298,8 @@ class TemperatureController
 	*
 	***************************************************************************/
 
-	static private void ConfirmMessage(MessageBus ei, String m )
+	static private void ConfirmMessage(MessageBus ei, Message msg )
 	{
-		// Here we create the message.
-
-		Message msg = new Message( (int) -5, m );
-
 		// Here we send the message to the message manager.
 
 		try
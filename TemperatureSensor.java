@@ -27,19 +27,19 @@ import java.util.*;
 
 class TemperatureSensor
 {
+	static private boolean HeaterState = false;	// Heater state: false == off, true == on
+	static private boolean ChillerState = false;	// Chiller state: false == off, true == on
+	static private float CurrentTemperature;		// Current simulated ambient room temperature
+
 	public static void main(String args[])
 	{
 		String MsgMgrIP;				// Message Manager IP address
-		Message Msg = null;				// Message object
-		List<Message> eq = null;			// Message Queue
 		int MsgId = 0;					// User specified message ID
 		MessageBus em = MessageBus.getInstance();// Interface object to the message manager
-		boolean HeaterState = false;	// Heater state: false == off, true == on
-		boolean ChillerState = false;	// Chiller state: false == off, true == on
-		float CurrentTemperature;		// Current simulated ambient room temperature
+		MessageDispatcher md = new MessageDispatcher(em);// Dispatches incoming messages to the handlers below
+		ScheduledParticipant participant = new ScheduledParticipant(ParticipantRuntime.getInstance());	// Drives the simulation loop
 		float DriftValue;				// The amount of temperature gained or lost
 		int	Delay = 2500;				// The loop delay (2.5 seconds)
-		boolean Done = false;			// Loop termination flag
 		FaultTolerantParticipant ftParticipant; // fault tolerant capability
 
 		/////////////////////////////////////////////////////////////////////////////////
@@ -71,7 +71,7 @@ class TemperatureSensor
 			/********************************************************************
 			 ** Here we set up the fault tolerant participant
 			 *********************************************************************/
-			ftParticipant = new FaultTolerantParticipant(ParticipantType.TEMPERATURE_SENSOR, ParticipantUtility.sendMessageWrapper(MessageBus.getInstance()));
+			ftParticipant = new FaultTolerantParticipant(ParticipantType.TEMPERATURE_SENSOR, MessageBus.getInstance());
 			try {
 				ftParticipant.start();
 			} catch (Exception e) {
@@ -87,7 +87,7 @@ class TemperatureSensor
 			float WinPosY = 0.3f; 	//This is the Y position of the message window in terms
 								 	//of a percentage of the screen height
 
-			MessageWindow mw = new MessageWindow("Temperature Sensor", WinPosX, WinPosY );
+			MessageDisplay mw = Instrumentation.getInstance().CreateMessageWindow("Temperature Sensor", WinPosX, WinPosY );
 
 			mw.WriteMessage("Registered with the message manager." );
 
@@ -122,101 +122,67 @@ class TemperatureSensor
 			// mw.WriteMessage("   Drift Value Set:: " + DriftValue ); // used to debug random temperature drift
 
 			/********************************************************************
-			** Here we start the main simulation loop
+			** Here we register the message handlers. We are looking for
+			** MessageIDs = -5, this means the the heater or chiller has been
+			** turned on/off. Note that we get all the messages at once... there
+			** is a 2.5 second delay between samples,.. so the assumption is that
+			** there should only be a message at most. If there are more, it is
+			** the last message that will effect the output of the temperature as
+			** it would in reality.
 			*********************************************************************/
 
-			mw.WriteMessage("Beginning Simulation... ");
+			md.register( MessageType.TEMPERATURE_CONFIRMATION, "H1", Msg -> HeaterState = true );	// heater on
+			md.register( MessageType.TEMPERATURE_CONFIRMATION, "H0", Msg -> HeaterState = false );	// heater off
+			md.register( MessageType.TEMPERATURE_CONFIRMATION, "C1", Msg -> ChillerState = true );	// chiller on
+			md.register( MessageType.TEMPERATURE_CONFIRMATION, "C0", Msg -> ChillerState = false );	// chiller off
 
+			// If the message ID == 99 then this is a signal that the simulation
+			// is to end. At this point, the participant is stopped and this
+			// process unregisters from the message manager.
 
-			while ( !Done )
-			{
-				// Post the current temperature
-
-				PostTemperature( em, CurrentTemperature );
-
-				mw.WriteMessage("Current Temperature::  " + CurrentTemperature + " F");
-
-				// Get the message queue
-
+			participant.haltOn( md, () -> {
 				try
 				{
-					eq = em.getAvailableMessages();
+					em.UnRegister();
 
 				} // try
 
-				catch( Exception e )
+				catch (Exception e)
 				{
-					mw.WriteMessage("Error getting message queue::" + e );
+					mw.WriteMessage("Error unregistering: " + e);
 
 				} // catch
 
-				// If there are messages in the queue, we read through them.
-				// We are looking for MessageIDs = -5, this means the the heater
-				// or chiller has been turned on/off. Note that we get all the messages
-				// at once... there is a 2.5 second delay between samples,.. so
-				// the assumption is that there should only be a message at most.
-				// If there are more, it is the last message that will effect the
-				// output of the temperature as it would in reality.
+				mw.WriteMessage("\n\nSimulation Stopped. \n");
+			});
 
-				int qlen = eq.size();
-
-				for ( int i = 0; i < qlen; i++ )
-				{
-					Msg = eq.get(i);
-
-					if ( Msg.GetMessageId() == -5 )
-					{
-						if (Msg.GetMessage().equalsIgnoreCase("H1")) // heater on
-						{
-							HeaterState = true;
-
-						} // if
-
-						if (Msg.GetMessage().equalsIgnoreCase("H0")) // heater off
-						{
-							HeaterState = false;
-
-						} // if
-
-						if (Msg.GetMessage().equalsIgnoreCase("C1")) // chiller on
-						{
-							ChillerState = true;
-
-						} // if
-
-						if (Msg.GetMessage().equalsIgnoreCase("C0")) // chiller off
-						{
-							ChillerState = false;
-
-						} // if
+			/********************************************************************
+			** Here we start the main simulation loop
+			*********************************************************************/
 
-					} // if
+			mw.WriteMessage("Beginning Simulation... ");
 
-					// If the message ID == 99 then this is a signal that the simulation
-					// is to end. At this point, the loop termination flag is set to
-					// true and this process unregisters from the message manager.
 
-					if ( Msg.GetMessageId() == 99 )
-					{
-						Done = true;
+			participant.every( Delay, () -> {
+				// Post the current temperature
 
-						try
-						{
-							em.UnRegister();
+				PostTemperature( em, CurrentTemperature );
 
-				    	} // try
+				mw.WriteMessage("Current Temperature::  " + CurrentTemperature + " F");
 
-				    	catch (Exception e)
-				    	{
-							mw.WriteMessage("Error unregistering: " + e);
+				// Pull the message queue and dispatch every message to its handler
 
-				    	} // catch
+				try
+				{
+					md.poll();
 
-				    	mw.WriteMessage("\n\nSimulation Stopped. \n");
+				} // try
 
-					} // if
+				catch( Exception e )
+				{
+					mw.WriteMessage("Error getting message queue::" + e );
 
-				} // for
+				} // catch
 
 				// Now we trend the temperature according to the status of the
 				// heater/chiller controller.
@@ -239,21 +205,25 @@ class TemperatureSensor
 
 				} // if chiller is on
 
-				// Here we wait for a 2.5 seconds before we start the next sample
+			}); // every
 
-				try
-				{
-					Thread.sleep( Delay );
+			// Stop heart beats together with the simulation and wait until the
+			// halt message has been handled
 
-				} // try
+			participant.onStop( ftParticipant::stop );
+			participant.start();
 
-				catch( Exception e )
-				{
-					mw.WriteMessage("Sleep error:: " + e );
+			try
+			{
+				participant.awaitStop();
 
-				} // catch
+			} // try
 
-			} // while
+			catch( InterruptedException e )
+			{
+				System.out.println( "Interrupted:: " + e );
+
+			} // catch
 
 		} else {
 
@@ -316,7 +286,8 @@ class TemperatureSensor
 	/***************************************************************************
 	* CONCRETE METHOD:: PostTemperature
 	* Purpose: This method posts the specified temperature value to the
-	* specified message manager. This method assumes an message ID of 1.
+	* specified message manager. This method assumes an message ID of 1. The
+	* reading travels as a float payload rather than as text.
 	*
 	* Arguments: MessageManagerInterface ei - this is the messagemanger interface
 	*			 where the message will be posted.
@@ -331,9 +302,15 @@ class TemperatureSensor
 
 	static private void PostTemperature(MessageBus ei, float temperature )
 	{
-		// Here we create the message.
+		// Here we take a recycled message from the pool and set the reading.
+
+		MessagePool pool = MessagePool.getInstance();
+		Message msg = pool.acquire( MessageType.TEMPERATURE_READING );
+		msg.SetFloatValue( temperature );
 
-		Message msg = new Message( (int) 1, String.valueOf(temperature) );
+		// The reading starts a latency trace if tracing is on (-Dmessage.trace=true).
+
+		MessageTracer.getInstance().start( msg );
 
 		// Here we send the message to the message manager.
 
@@ -350,6 +327,10 @@ class TemperatureSensor
 
 		} // catch
 
+		// The message has been serialized by now, so it can be reused.
+
+		pool.release( msg );
+
 	} // PostTemperature
 
 } // TemperatureSensor
\ No newline at end of file
@@ -0,0 +1,200 @@
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Description:
+ * This class is a hashed timing wheel of deadlines keyed by participant ID, used to detect expired heart beats.
+ * The wheel is an array of slots, one per tick; a deadline is kept in the slot of the tick it falls in. Every
+ * entry is a node of a doubly linked list, so moving a deadline (a heart beat arrived) and cancelling it are
+ * O(1), and advancing the wheel only visits the slots of the ticks that passed. Participants that keep sending
+ * heart beats are never visited, so the cost of detection is proportional to failures, not to the population.
+ * The wheel spans at least the longest delay it is created for, so no entry ever has to go around more than once.
+ * Nodes live in parallel primitive arrays and are found through a LongIntHashMap, so moving a deadline neither
+ * boxes the ID nor allocates. This class is not thread safe.
+ */
+public class TimingWheel {
+    private static final int NONE = -1;
+
+    private final long tick;
+    private final int slotCount;
+    private final int mask;
+    private long currentTick;
+    private LongIntHashMap index;   // ID -> node
+
+    // Nodes 0 .. slotCount - 1 are the sentinels of the slots' lists; the others hold deadlines.
+    private long[] ids;
+    private long[] deadlines;
+    private int[] prev;
+    private int[] next;
+    private int freeNode = NONE;    // first node of the free list, linked through next
+    private int nodeCount;
+
+    /***************************************************************************
+     * Purpose: Create an empty wheel
+     *
+     * Arguments:
+     * long - tick length in milliseconds, the resolution of the deadlines
+     * long - longest delay between now and a deadline in milliseconds
+     * long - current time in milliseconds
+     *
+     * Returns: None.
+     *
+     * Exceptions: IllegalArgumentException if the tick is not positive.
+     *
+     ****************************************************************************/
+    public TimingWheel(long tick, long maxDelay, long currentTime) {
+        if (tick <= 0) throw new IllegalArgumentException("tick must be positive: " + tick);
+
+        this.tick = tick;
+        this.slotCount = Integer.highestOneBit((int) Math.max(1, maxDelay / tick + 2) * 2 - 1);
+        this.mask = slotCount - 1;
+        this.currentTick = currentTime / tick;
+        this.index = new LongIntHashMap();
+
+        int capacity = slotCount * 2;
+        ids = new long[capacity];
+        deadlines = new long[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        clear();
+    }
+
+    /***************************************************************************
+     * Purpose: Set the deadline of an ID, replacing its previous deadline if any
+     *
+     * Arguments:
+     * long - ID
+     * long - deadline in milliseconds
+     *
+     * Returns: None.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public void schedule(long id, long deadline) {
+        int node = index.get(id, NONE);
+        if (node == NONE) {
+            node = allocateNode();
+            ids[node] = id;
+            index.put(id, node);
+        } else {
+            unlink(node);
+        }
+
+        // a deadline that already passed fires on the next tick
+        long deadlineTick = Math.max(currentTick + 1, (deadline + tick - 1) / tick);
+        deadlines[node] = deadline;
+        link((int) (deadlineTick & mask), node);
+    }
+
+    /***************************************************************************
+     * Purpose: Remove the deadline of an ID
+     *
+     * Arguments: long - ID
+     *
+     * Returns: boolean - true if the ID had a deadline.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public boolean cancel(long id) {
+        int node = index.remove(id, NONE);
+        if (node == NONE) return false;
+
+        unlink(node);
+        releaseNode(node);
+        return true;
+    }
+
+    public boolean contains(long id) {
+        return index.containsKey(id);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public void clear() {
+        for (int i = 0; i < slotCount; i++) {
+            prev[i] = i;
+            next[i] = i;
+        }
+        nodeCount = slotCount;
+        freeNode = NONE;
+        index.clear();
+    }
+
+    /***************************************************************************
+     * Purpose: Move the wheel to the current time and remove every ID whose
+     * deadline passed, reporting it to the consumer
+     *
+     * Arguments:
+     * long - current time in milliseconds
+     * LongConsumer - receives the expired IDs
+     *
+     * Returns: int - number of expired IDs.
+     *
+     * Exceptions: None.
+     *
+     ****************************************************************************/
+    public int advance(long currentTime, LongConsumer expired) {
+        long targetTick = currentTime / tick;
+        // after a long pause every slot is visited once
+        long firstTick = Math.max(currentTick + 1, targetTick - mask);
+        int count = 0;
+
+        for (long t = firstTick; t <= targetTick; t++) {
+            int sentinel = (int) (t & mask);
+            int node = next[sentinel];
+            while (node != sentinel) {
+                int following = next[node];
+                if (deadlines[node] <= currentTime) {
+                    long id = ids[node];
+                    unlink(node);
+                    index.remove(id, NONE);
+                    releaseNode(node);
+                    expired.accept(id);
+                    count++;
+                }
+                node = following;
+            }
+        }
+
+        currentTick = Math.max(currentTick, targetTick);
+        return count;
+    }
+
+    private int allocateNode() {
+        if (freeNode != NONE) {
+            int node = freeNode;
+            freeNode = next[node];
+            return node;
+        }
+
+        if (nodeCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return nodeCount++;
+    }
+
+    private void releaseNode(int node) {
+        next[node] = freeNode;
+        freeNode = node;
+    }
+
+    private void link(int sentinel, int node) {
+        prev[node] = prev[sentinel];
+        next[node] = sentinel;
+        next[prev[sentinel]] = node;
+        prev[sentinel] = node;
+    }
+
+    private void unlink(int node) {
+        next[prev[node]] = next[node];
+        prev[next[node]] = prev[node];
+    }
+}
@@ -0,0 +1,105 @@
+package BenchmarkPackage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Description:
+ * JMH refuses benchmark classes in the default package, and classes in a named package cannot
+ * import the classes of the default package (MessageBus, MessageManager, MonitorManager, ...).
+ * This class looks those classes up at run time and hands out method handles whose default
+ * package types are replaced by Object. Benchmarks keep the handles in static final fields, so
+ * the JIT treats them as constants and inlines the target; the indirection costs next to nothing.
+ */
+final class DefaultPackage {
+
+    private DefaultPackage() {
+    }
+
+    /**
+     * Load a class of the default package
+     *
+     * @param className simple class name
+     * @return the class
+     */
+    static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("class not found: " + className, e);
+        }
+    }
+
+    /**
+     * Constructor handle of type (parameters)Object
+     */
+    static MethodHandle constructor(String className, Class<?>... parameters) {
+        try {
+            Class<?> c = type(className);
+            MethodHandle mh = lookup(c).findConstructor(c, MethodType.methodType(void.class, parameters));
+            return mh.asType(visible(mh.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("constructor not found: " + className, e);
+        }
+    }
+
+    /**
+     * Instance method handle of type (Object, parameters)returnType; private and package-private methods are accessible
+     */
+    static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            Class<?> c = type(className);
+            MethodHandle mh = lookup(c).findVirtual(c, name, MethodType.methodType(returnType, parameters));
+            return mh.asType(visible(mh.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("method not found: " + className + "." + name, e);
+        }
+    }
+
+    /**
+     * Static method handle of type (parameters)returnType
+     */
+    static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            Class<?> c = type(className);
+            MethodHandle mh = lookup(c).findStatic(c, name, MethodType.methodType(returnType, parameters));
+            return mh.asType(visible(mh.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("method not found: " + className + "." + name, e);
+        }
+    }
+
+    /**
+     * Getter handle of type ()fieldType for a static field
+     */
+    static MethodHandle staticGetter(String className, String name, Class<?> fieldType) {
+        try {
+            Class<?> c = type(className);
+            MethodHandle mh = lookup(c).findStaticGetter(c, name, fieldType);
+            return mh.asType(visible(mh.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("field not found: " + className + "." + name, e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> c) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+    }
+
+    /**
+     * Replace every default package type of a method type with Object
+     */
+    private static MethodType visible(MethodType type) {
+        MethodType result = type.changeReturnType(visible(type.returnType()));
+        for (int i = 0; i < type.parameterCount(); i++) {
+            result = result.changeParameterType(i, visible(type.parameterType(i)));
+        }
+        return result;
+    }
+
+    private static Class<?> visible(Class<?> c) {
+        if (c.isPrimitive() || c.isArray()) return c;
+        return c.getPackageName().isEmpty() ? Object.class : c;
+    }
+}
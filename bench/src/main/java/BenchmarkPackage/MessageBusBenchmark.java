@@ -0,0 +1,84 @@
+package BenchmarkPackage;
+
+import MessagePackage.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.rmi.Remote;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description:
+ * Cost of one MessageBus poll over real RMI on the loopback interface, with 0, 1 or 2 standby
+ * channels. Every channel is an address of the same in-process message manager, so the numbers
+ * show the per-channel overhead rather than network latency. The 127.0.0.2 address needs the
+ * whole 127/8 loopback range, as on Linux.
+ * sendThenDrain is sendThenPoll with drainTo into a reused buffer instead of a new list per poll.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dmessagemanager.quiet=true")
+public class MessageBusBenchmark {
+    private static final String[] ADDRESSES = {"localhost", "127.0.0.1", "127.0.0.2"};
+
+    private static final MethodHandle NEW_MANAGER = DefaultPackage.constructor("MessageManager");
+    private static final MethodHandle NEW_BUS = DefaultPackage.staticMethod("MessageBus", "newInstance", DefaultPackage.type("MessageBus"));
+    private static final MethodHandle INIT = DefaultPackage.method("MessageBus", "init", void.class, String[].class);
+    private static final MethodHandle SEND = DefaultPackage.method("MessageBus", "SendMessage", void.class, Message.class);
+    private static final MethodHandle POLL = DefaultPackage.method("MessageBus", "getAvailableMessages", List.class);
+    private static final MethodHandle DRAIN = DefaultPackage.method("MessageBus", "drainTo", int.class, Message[].class);
+    private static final MethodHandle UNREGISTER = DefaultPackage.method("MessageBus", "UnRegister", void.class);
+
+    @Param({"0", "1", "2"})
+    int standbys;
+
+    private Registry registry;
+    private Object mm;
+    private Object bus;
+    private Message msg;
+    private Message[] buffer = new Message[64];
+
+    @Setup
+    public void setup() throws Throwable {
+        System.setProperty("messagemanager.quiet", "true");
+        registry = LocateRegistry.createRegistry(1099);
+        mm = (Object) NEW_MANAGER.invokeExact();
+        registry.rebind("MessageManager", (Remote) mm);
+
+        bus = (Object) NEW_BUS.invokeExact();
+        INIT.invokeExact(bus, Arrays.copyOf(ADDRESSES, standbys + 1));
+        msg = new Message(1, 72.5f);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        UNREGISTER.invokeExact(bus);
+        UnicastRemoteObject.unexportObject((Remote) mm, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    @Benchmark
+    public List<?> poll() throws Throwable {
+        return (List<?>) POLL.invokeExact(bus);
+    }
+
+    @Benchmark
+    public List<?> sendThenPoll() throws Throwable {
+        SEND.invokeExact(bus, msg);
+        return (List<?>) POLL.invokeExact(bus);
+    }
+
+    @Benchmark
+    public int sendThenDrain() throws Throwable {
+        SEND.invokeExact(bus, msg);
+        return (int) DRAIN.invokeExact(bus, buffer);
+    }
+}
@@ -0,0 +1,68 @@
+package BenchmarkPackage;
+
+import MessagePackage.Message;
+import MessagePackage.MessageQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.rmi.Remote;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description:
+ * Fan-out cost of MessageManager.SendMessage, which copies every message into the queue of every
+ * registered participant, called in process without RMI. The queues are emptied every DRAIN_EVERY
+ * sends, standing in for the participants' polls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dmessagemanager.quiet=true")
+public class MessageManagerBenchmark {
+    private static final int DRAIN_EVERY = 1000;
+
+    private static final MethodHandle NEW = DefaultPackage.constructor("MessageManager");
+    private static final MethodHandle REGISTER = DefaultPackage.method("MessageManager", "Register", long.class);
+    private static final MethodHandle SEND = DefaultPackage.method("MessageManager", "SendMessage", void.class, Message.class);
+    private static final MethodHandle QUEUES = DefaultPackage.staticGetter("MessageManager", "MessageQueueList", Vector.class);
+
+    @Param({"10", "100", "1000"})
+    int participants;
+
+    private Object mm;
+    private Vector<MessageQueue> queues;
+    private Message msg;
+    private int sends;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Throwable {
+        System.setProperty("messagemanager.quiet", "true");
+        mm = (Object) NEW.invokeExact();
+        for (int i = 0; i < participants; i++) {
+            long id = (long) REGISTER.invokeExact(mm);
+        }
+        queues = (Vector<MessageQueue>) QUEUES.invokeExact();
+        msg = new Message(1, 72.5f);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        UnicastRemoteObject.unexportObject((Remote) mm, true);
+    }
+
+    @Benchmark
+    public void sendMessage() throws Throwable {
+        SEND.invokeExact(mm, msg);
+        if (++sends == DRAIN_EVERY) {
+            sends = 0;
+            for (MessageQueue mq : queues) {
+                mq.ClearMessageQueue();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package BenchmarkPackage;
+
+import MessagePackage.Message;
+import MessagePackage.MessageQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description:
+ * Cost of the MessageQueue operations the message manager runs for every message and every poll,
+ * at different queue lengths. addThenGet keeps the queue length constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageQueueBenchmark {
+
+    @Param({"1", "16", "256"})
+    int queueSize;
+
+    private MessageQueue mq;
+    private Message msg;
+
+    @Setup
+    public void setup() {
+        mq = new MessageQueue();
+        msg = new Message(1, 72.5f);
+        for (int i = 0; i < queueSize; i++) {
+            mq.AddMessage(msg);
+        }
+    }
+
+    @Benchmark
+    public Message addThenGet() {
+        mq.AddMessage(msg);
+        return mq.GetMessage();
+    }
+
+    @Benchmark
+    public MessageQueue getCopy() {
+        return mq.GetCopy();
+    }
+}
@@ -0,0 +1,55 @@
+package BenchmarkPackage;
+
+import MessagePackage.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description:
+ * Java serialization cost of one Message, as paid on every RMI send and for every message of a
+ * returned queue. "text" is a reading carried as a string, "float" the same reading as a typed payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+
+    @Param({"text", "float"})
+    String payload;
+
+    private Message msg;
+    private ByteArrayOutputStream bytes;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        msg = "text".equals(payload) ? new Message(1, "72.5") : new Message(1, 72.5f);
+        bytes = new ByteArrayOutputStream(512);
+        serialized = write();
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        bytes.reset();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(msg);
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        return in.readObject();
+    }
+
+    private byte[] write() throws IOException {
+        serialize();
+        return bytes.toByteArray();
+    }
+}
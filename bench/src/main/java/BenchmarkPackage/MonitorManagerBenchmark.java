@@ -0,0 +1,57 @@
+package BenchmarkPackage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description:
+ * Cost of the MonitorManager failure detector: the bookkeeping of one heart beat, and one detector
+ * tick when none of the registered participants has failed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitorManagerBenchmark {
+    private static final long TIMEOUT = 3000;
+    private static final Class<?> PARTICIPANT_TYPE = DefaultPackage.type("ParticipantType");
+
+    private static final MethodHandle NEW = DefaultPackage.constructor("MonitorManager");
+    private static final MethodHandle RECORD = DefaultPackage.method("MonitorManager", "recordHeartBeat", void.class,
+            long.class, PARTICIPANT_TYPE, long.class, long.class);
+    private static final MethodHandle DETECT = DefaultPackage.method("MonitorManager", "detectFailures", void.class, long.class);
+
+    @Param({"10", "100", "1000"})
+    int participants;
+
+    private Object mm;
+    private Object[] types;
+    private long now;
+    private int next;
+
+    @Setup
+    public void setup() throws Throwable {
+        mm = (Object) NEW.invokeExact();
+        types = PARTICIPANT_TYPE.getEnumConstants();
+        now = System.currentTimeMillis();
+        for (int i = 0; i < participants; i++) {
+            RECORD.invokeExact(mm, (long) i + 1, types[i % types.length], now, TIMEOUT);
+        }
+    }
+
+    @Benchmark
+    public void recordHeartBeat() throws Throwable {
+        int i = next;
+        next = (i + 1) % participants;
+        RECORD.invokeExact(mm, (long) i + 1, types[i % types.length], now, TIMEOUT);
+    }
+
+    @Benchmark
+    public void detectFailures() throws Throwable {
+        DETECT.invokeExact(mm, now);
+    }
+}